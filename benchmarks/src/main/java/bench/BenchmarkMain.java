@@ -0,0 +1,24 @@
+package bench;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Punto de entrada de benchmarks.jar: el mismo que org.openjdk.jmh.Main, pero siempre con el
+ * perfilador gc (gc.alloc.rate.norm = bytes reservados por operación) para que las regresiones
+ * de memoria en los caminos calientes salgan en los resultados. Si se pasa algún -prof,
+ * se usan solo los perfiladores indicados.
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-prof") && !options.contains("-l") && !options.contains("-h")
+                && !options.contains("-lprof")) {
+            options.add("-prof");
+            options.add("gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,24 @@
+package game;
+
+// Partidas de prueba reproducibles para los benchmarks de otros paquetes (createFormation es privado del paquete)
+public final class BenchmarkStates {
+    private BenchmarkStates() {}
+
+    // players naves, una formación de aliens alienígenas y ticks de juego con disparos para tener balas en vuelo
+    public static GameState create(int players, int aliens, int ticks) {
+        GameState state = new GameState(42);
+        for (int p = 0; p < players; p++) {
+            state.addPlayer(p);
+        }
+        state.createFormation(aliens);
+        for (long tick = 1; tick <= ticks; tick++) {
+            for (int p = 0; p < players; p++) {
+                if ((tick + p) % 4 == 0) {
+                    state.handleInput(p, "SHOOT");
+                }
+            }
+            state.update(tick, 1.0 / 30);
+        }
+        return state;
+    }
+}
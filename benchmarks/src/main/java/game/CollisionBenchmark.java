@@ -0,0 +1,111 @@
+package game;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Coste por tick de mover la formación y probar todas las balas contra ella:
+ * recorrido lineal (lo que hacía GameState) frente al SpatialGrid incremental.
+ * Está en el paquete game para poder usar EntityStore y SpatialGrid, que son privados del paquete.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar CollisionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+    private static final int TILE_SIZE = 16;
+    private static final int BOARD = TILE_SIZE * 32;
+
+    @Param({"120", "768", "3072"})
+    public int aliens;
+
+    @Param({"100", "500"})
+    public int bullets;
+
+    private EntityStore formation;
+    private EntityStore shots;
+    private SpatialGrid grid;
+    private IntPredicate alive;
+    private int direction = 1;
+
+    @Setup
+    public void setup() {
+        // Hasta 768 alienígenas caben en casillas de 16 px; la formación grande usa 8 px
+        int size = aliens > 768 ? TILE_SIZE / 2 : TILE_SIZE;
+        int columns = BOARD / size - 2;
+        formation = new EntityStore(aliens);
+        for (int i = 0; i < aliens; i++) {
+            int col = i % columns;
+            int row = i / columns;
+            formation.add(size + col * size, size + row * size, size, size, EntityTypes.ALIEN, -1);
+        }
+        grid = new SpatialGrid(formation, TILE_SIZE, BOARD / TILE_SIZE, BOARD / TILE_SIZE);
+        for (int alien = 0; alien < formation.limit(); alien++) {
+            grid.add(alien);
+        }
+        alive = formation::isAlive;
+
+        Random random = new Random(42);
+        shots = new EntityStore(bullets);
+        for (int i = 0; i < bullets; i++) {
+            shots.add(random.nextInt(BOARD), random.nextInt(BOARD),
+                    TILE_SIZE / 8, TILE_SIZE / 2, EntityTypes.BULLET, 0);
+        }
+    }
+
+    private int nextDirection() {
+        direction = -direction;
+        return direction;
+    }
+
+    @Benchmark
+    public int linearScan() {
+        int dx = nextDirection();
+        for (int alien = 0; alien < formation.limit(); alien++) {
+            formation.x[alien] += dx;
+        }
+        int hits = 0;
+        for (int bullet = 0; bullet < shots.limit(); bullet++) {
+            for (int alien = 0; alien < formation.limit(); alien++) {
+                if (formation.isAlive(alien) && formation.overlaps(alien, shots.x[bullet], shots.y[bullet],
+                        shots.width[bullet], shots.height[bullet])) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int spatialGrid() {
+        int dx = nextDirection();
+        for (int alien = 0; alien < formation.limit(); alien++) {
+            formation.x[alien] += dx;
+            grid.update(alien);
+        }
+        int hits = 0;
+        for (int bullet = 0; bullet < shots.limit(); bullet++) {
+            if (grid.findFirst(shots.x[bullet], shots.y[bullet], shots.width[bullet], shots.height[bullet], alive) >= 0) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
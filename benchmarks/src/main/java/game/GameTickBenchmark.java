@@ -0,0 +1,90 @@
+package game;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Un tick de GameState.update() con distintas cantidades de alienígenas, balas en vuelo y jugadores.
+ * Cada tick se reponen las balas hasta el objetivo y la formación se rehace cuando pierde la mitad,
+ * así que el escenario es estable y con muchas colisiones bala-alienígena.
+ * Con -prof gc, gc.alloc.rate.norm muestra los bytes reservados por tick. En tick (la simulación sola,
+ * como en los ticks sin broadcast) debe ser ~0 en régimen estable: solo reservan los cambios de formación
+ * y los reinicios de partida. tickAndPublish añade la GameStateView que la sala publica en cada
+ * broadcast, proporcional al número de entidades.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar GameTickBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dspaceinvaders.quiet=true")
+public class GameTickBenchmark {
+    @Param({"4", "32"})
+    public int players;
+
+    @Param({"52", "512", "2048"})
+    public int aliens;
+
+    @Param({"16", "256"})
+    public int bullets;
+
+    private GameState state;
+    private long tick;
+    private int shooter;
+
+    @Setup
+    public void setup() {
+        state = new GameState(42);
+        for (int p = 0; p < players; p++) {
+            state.addPlayer(p);
+        }
+        state.createFormation(aliens);
+    }
+
+    @Benchmark
+    public void tick() {
+        advance(false);
+    }
+
+    @Benchmark
+    public void tickAndPublish() {
+        advance(true);
+    }
+
+    private void advance(boolean publish) {
+        tick++;
+        // Reparte los disparos entre los jugadores hasta tener el objetivo de balas en vuelo
+        for (int shots = 0; state.getBulletCount() < bullets && shots < players * 4; shots++) {
+            state.handleInput(shooter, "SHOOT");
+            shooter = (shooter + 1) % players;
+        }
+        for (int p = 0; p < players; p++) {
+            long phase = tick + p;
+            if (phase % 8 == 1) {
+                state.handleInput(p, phase % 32 < 16 ? "LEFT" : "RIGHT");
+            }
+        }
+        if (state.isAllPlayersEliminated()) {
+            // Como al reconectarse los clientes: addPlayer reinicia la partida terminada
+            for (int p = 0; p < players; p++) {
+                state.addPlayer(p);
+            }
+            state.createFormation(aliens);
+        } else if (state.getAlienCount() < aliens / 2) {
+            state.createFormation(aliens);
+        }
+        state.update(tick, 1.0 / 30, publish);
+    }
+}
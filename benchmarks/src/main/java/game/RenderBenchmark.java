@@ -0,0 +1,66 @@
+package game;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Tiempo de un frame de GameRenderer con cientos de entidades en pantalla: cada sprite dibujado
+ * desde el atlas (spriteCache=true) frente a las primitivas con antialiasing de siempre (false).
+ * Se dibuja en una imagen fuera de pantalla, así que funciona sin display.
+ *
+ *   java -Djava.awt.headless=true -jar benchmarks/target/benchmarks.jar RenderBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dspaceinvaders.quiet=true", "-Djava.awt.headless=true"})
+public class RenderBenchmark {
+    @Param({"52", "512"})
+    public int aliens;
+
+    @Param({"true", "false"})
+    public boolean spriteCache;
+
+    private GameRenderer renderer;
+    private ArrayList<GameObject> objects;
+    private BufferedImage frame;
+    private Graphics2D graphics;
+
+    @Setup
+    public void setup() {
+        objects = BenchmarkStates.create(4, aliens, 30).getGameObjects();
+        renderer = new GameRenderer(spriteCache);
+        frame = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB);
+        graphics = frame.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage renderFrame() {
+        graphics.setColor(Color.black);
+        graphics.fillRect(0, 0, 512, 512);
+        renderer.render(graphics, objects, 1234, false);
+        return frame;
+    }
+}
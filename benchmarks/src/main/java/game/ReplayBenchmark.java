@@ -0,0 +1,84 @@
+package game;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Una partida entera reproducida desde su grabación (Replay.run), incluido el hash de cada tick.
+ * Con -p file=ruta se usa una grabación real del servidor (--record=dir), así que el benchmark
+ * recorre exactamente los ticks de una partida de producción; sin fichero se graba al preparar
+ * una partida sintética de players jugadores durante ticks ticks.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar ReplayBenchmark -p file=grabaciones/sala-1.replay
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dspaceinvaders.quiet=true", "-Dspaceinvaders.logLevel=WARN"})
+public class ReplayBenchmark {
+    @Param({""})
+    public String file;
+
+    @Param({"4"})
+    public int players;
+
+    @Param({"1800"})
+    public int ticks;
+
+    private byte[] recording;
+
+    @Setup
+    public void setup() throws IOException {
+        recording = file.isEmpty() ? recordMatch(players, ticks) : Files.readAllBytes(Paths.get(file));
+        Replay.Result result = Replay.run(new ByteArrayInputStream(recording));
+        if (!result.matches()) {
+            throw new IllegalStateException("Recording diverges at tick " + result.mismatchTick);
+        }
+    }
+
+    @Benchmark
+    public Replay.Result replay() throws IOException {
+        return Replay.run(new ByteArrayInputStream(recording));
+    }
+
+    // Entradas aleatorias con semilla fija; los jugadores eliminados reinician la partida
+    private static byte[] recordMatch(int players, int ticks) throws IOException {
+        GameState state = new GameState(42);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputLog log = new InputLog(bytes, "ReplayBenchmark", state, 1.0 / 30)) {
+            state.setRecorder(log);
+            SplittableRandom random = new SplittableRandom(7);
+            for (int p = 0; p < players; p++) {
+                state.queueAddPlayer(p);
+            }
+            for (long tick = 0; tick < ticks; tick++) {
+                for (int p = 0; p < players; p++) {
+                    if (random.nextInt(3) == 0) {
+                        int inputs = state.isGameOver() ? GameState.INPUT_RESTART : random.nextInt(8);
+                        state.queueInput(p, inputs, (int) tick + 1);
+                    }
+                }
+                state.update(tick, 1.0 / 30);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
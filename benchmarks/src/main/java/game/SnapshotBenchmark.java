@@ -0,0 +1,52 @@
+package game;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import messages.Snapshot;
+
+/*
+ * Coste de sacar el estado de GameState para enviarlo: getGameObjects() (una vista GameObject por
+ * entidad, lo que usa el protocolo serializado y el renderizado) frente a Snapshot.capture(),
+ * que copia los campos a un int[] a través de forEachEntity sin crear objetos por entidad.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar SnapshotBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dspaceinvaders.quiet=true")
+public class SnapshotBenchmark {
+    @Param({"52", "512", "2048"})
+    public int aliens;
+
+    private GameState state;
+
+    @Setup
+    public void setup() {
+        state = BenchmarkStates.create(4, aliens, 30);
+    }
+
+    @Benchmark
+    public ArrayList<GameObject> getGameObjects() {
+        return state.getGameObjects();
+    }
+
+    @Benchmark
+    public Snapshot captureSnapshot() {
+        return Snapshot.capture(0, state);
+    }
+}
@@ -0,0 +1,422 @@
+package loadtest;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.HdrHistogram.Histogram;
+
+import messages.Protocol;
+import messages.Snapshot;
+import messages.SnapshotCodec;
+import server.GameServer;
+import server.Transport;
+
+/*
+ * Genera carga con N bots sin interfaz que usan el mismo handshake y protocolo binario que el cliente.
+ * Todos los bots se manejan desde un único Selector. Cada bot decodifica sus snapshots (con deltas y
+ * ACK como ClientNetworkHandler), envía LEFT/RIGHT/SHOOT y mide la latencia entrada→estado: desde que
+ * envía un movimiento hasta que recibe el primer snapshot en el que su nave ya se ha movido.
+ *
+ *   --transport=blocking|virtual|nio  arranca el servidor en este mismo proceso
+ *   --host=H --port=P                 o se conecta a uno externo
+ *   --bots=N --rooms=R --seconds=S
+ *   --input-rate=N                    entradas por segundo y bot (5 por defecto)
+ *   --script=random|zigzag            entradas aleatorias u 8 pasos a cada lado con un disparo cada 4
+ *   --seed=N --report=fichero.hgrm    distribución de percentiles de HdrHistogram
+ */
+public class BotLoadTest {
+    private static final int MAX_PENDING_CONNECTS = 200;
+    private static final int WARMUP_SECONDS = 3;
+    // Un movimiento sin respuesta en este tiempo cuenta como perdido
+    private static final long INPUT_TIMEOUT_NANOS = 2_000_000_000L;
+    private static final long HIGHEST_LATENCY_MICROS = 60_000_000L;
+    private static final int BOARD_WIDTH = 512;
+    private static final int LEFT = Protocol.inputCode("LEFT");
+    private static final int RIGHT = Protocol.inputCode("RIGHT");
+    private static final int SHOOT = Protocol.inputCode("SHOOT");
+
+    private final String host;
+    private final int port;
+    private final int bots;
+    private final int rooms;
+    private final int seconds;
+    private final long inputIntervalNanos;
+    private final boolean zigzag;
+    private final SplittableRandom random;
+
+    private final Selector selector;
+    private final List<Bot> all = new ArrayList<>();
+    private final Histogram latency = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+    private int pendingConnects;
+    private int ready;
+    private int disconnects;
+    private boolean measuring;
+    private long bytes;
+    private long frames;
+    private long inputs;
+    private long timeouts;
+    private long droppedInputs;
+    private int gamesOver;
+
+    public BotLoadTest(String host, int port, int bots, int rooms, int seconds, int inputRate, boolean zigzag,
+                       long seed) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.bots = bots;
+        this.rooms = rooms;
+        this.seconds = seconds;
+        this.inputIntervalNanos = 1_000_000_000L / inputRate;
+        this.zigzag = zigzag;
+        this.random = new SplittableRandom(seed);
+        this.selector = Selector.open();
+    }
+
+    private final class Bot {
+        final SocketChannel channel;
+        final String room;
+        final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        final ByteBuffer writeBuffer = ByteBuffer.allocate(256);
+        final Snapshot[] received = new Snapshot[64];
+        SelectionKey key;
+        boolean handshakeDone;
+        boolean gameOver;
+        int playerId;
+        int step;
+        int inputSequence;
+        long nextInputNanos;
+        // Movimiento pendiente de confirmar: x de la nave al enviarlo y cuándo se envió
+        int pendingFromX = Integer.MIN_VALUE;
+        long pendingSince;
+        int shipX = Integer.MIN_VALUE;
+
+        Bot(SocketChannel channel, String room) {
+            this.channel = channel;
+            this.room = room;
+        }
+    }
+
+    public void run(String label) throws IOException {
+        long connectStart = System.nanoTime();
+        int opened = 0;
+        while (ready + disconnects < bots) {
+            while (opened < bots && pendingConnects < MAX_PENDING_CONNECTS) {
+                open();
+                opened++;
+            }
+            poll(100);
+        }
+        long connectMillis = (System.nanoTime() - connectStart) / 1_000_000;
+
+        runFor(WARMUP_SECONDS * 1_000_000_000L);
+
+        measuring = true;
+        latency.reset();
+        int disconnectsBefore = disconnects;
+        long measureStart = System.nanoTime();
+        runFor(seconds * 1_000_000_000L);
+        double elapsed = (System.nanoTime() - measureStart) / 1e9;
+        measuring = false;
+
+        System.out.printf("%-10s bots=%d salas=%d listos=%d conexión=%d ms entradas=%d " +
+                        "latencia entrada→estado p50=%.1f ms p90=%.1f ms p99=%.1f ms p99.9=%.1f ms máx=%.1f ms " +
+                        "sin respuesta=%d descartadas=%d snapshots/s por bot=%.1f recibido=%.1f KB/s por bot (%.2f MB/s) " +
+                        "desconexiones=%d partidas terminadas=%d%n",
+                label, bots, rooms, ready, connectMillis, inputs,
+                latency.getValueAtPercentile(50) / 1000.0,
+                latency.getValueAtPercentile(90) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0,
+                latency.getMaxValue() / 1000.0,
+                timeouts, droppedInputs,
+                frames / elapsed / Math.max(1, ready),
+                bytes / elapsed / 1024 / Math.max(1, ready),
+                bytes / elapsed / (1024 * 1024),
+                disconnects - disconnectsBefore, gamesOver);
+
+        for (Bot bot : all) {
+            bot.channel.close();
+        }
+        selector.close();
+    }
+
+    // Distribución completa de la latencia en microsegundos, en el formato .hgrm de HdrHistogram
+    public void writeReport(PrintStream out) {
+        latency.outputPercentileDistribution(out, 1000.0);
+    }
+
+    private void runFor(long nanos) throws IOException {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            poll(1);
+            sendDueInputs(System.nanoTime());
+        }
+    }
+
+    private void open() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Bot bot = new Bot(channel, rooms > 1 ? "bots-" + all.size() % rooms : Protocol.DEFAULT_ROOM);
+        all.add(bot);
+        pendingConnects++;
+        if (channel.connect(new InetSocketAddress(host, port))) {
+            bot.key = channel.register(selector, 0, bot);
+            onConnected(bot);
+        } else {
+            bot.key = channel.register(selector, SelectionKey.OP_CONNECT, bot);
+        }
+    }
+
+    private void poll(long timeoutMillis) throws IOException {
+        selector.select(timeoutMillis);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Bot bot = (Bot) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    bot.channel.finishConnect();
+                    onConnected(bot);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush(bot);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    onReadable(bot);
+                }
+            } catch (IOException e) {
+                disconnect(bot);
+            }
+        }
+    }
+
+    private void disconnect(Bot bot) throws IOException {
+        if (!bot.handshakeDone) {
+            pendingConnects--;
+        }
+        disconnects++;
+        bot.key.cancel();
+        bot.channel.close();
+    }
+
+    private void onConnected(Bot bot) throws IOException {
+        byte[] room = bot.room.getBytes(StandardCharsets.UTF_8);
+        bot.writeBuffer.putInt(Protocol.MAGIC).put(Protocol.VERSION).put(Protocol.BINARY)
+                .put(Protocol.ROOM_JOIN).putShort((short) room.length).put(room);
+        flush(bot);
+    }
+
+    // Escribe lo acumulado en writeBuffer; si el socket no lo acepta todo, espera a OP_WRITE
+    private void flush(Bot bot) throws IOException {
+        ByteBuffer buffer = bot.writeBuffer;
+        buffer.flip();
+        bot.channel.write(buffer);
+        buffer.compact();
+        bot.key.interestOps(buffer.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void onReadable(Bot bot) throws IOException {
+        ByteBuffer buffer = bot.readBuffer;
+        int read = bot.channel.read(buffer);
+        if (read < 0) {
+            throw new IOException("closed by server");
+        }
+        if (measuring) {
+            bytes += read;
+        }
+        buffer.flip();
+        try {
+            if (!bot.handshakeDone && !readHandshake(bot)) {
+                return;
+            }
+            while (buffer.remaining() >= 4) {
+                int frameLength = buffer.getInt(buffer.position());
+                if (frameLength < 1 || frameLength > buffer.capacity() - 4) {
+                    throw new IOException("Invalid frame length: " + frameLength);
+                }
+                if (buffer.remaining() < 4 + frameLength) {
+                    break;
+                }
+                buffer.getInt();
+                byte type = buffer.get();
+                byte[] payload = new byte[frameLength - 1];
+                buffer.get(payload);
+                if (type == Protocol.FRAME_SNAPSHOT) {
+                    onSnapshot(bot, payload);
+                }
+            }
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    private boolean readHandshake(Bot bot) throws IOException {
+        ByteBuffer buffer = bot.readBuffer;
+        // MAGIC + protocolo + playerId + nombre de la sala (writeUTF)
+        if (buffer.remaining() < 11 || buffer.remaining() < 11 + (buffer.getShort(buffer.position() + 9) & 0xFFFF)) {
+            return false;
+        }
+        if (buffer.getInt() != Protocol.MAGIC || buffer.get() != Protocol.BINARY) {
+            throw new IOException("unexpected handshake");
+        }
+        bot.playerId = buffer.getInt();
+        int roomLength = buffer.getShort() & 0xFFFF;
+        buffer.position(buffer.position() + roomLength);
+        bot.handshakeDone = true;
+        bot.nextInputNanos = System.nanoTime() + random.nextLong(inputIntervalNanos);
+        pendingConnects--;
+        ready++;
+        return true;
+    }
+
+    private void onSnapshot(Bot bot, byte[] payload) throws IOException {
+        Snapshot[] received = bot.received;
+        Snapshot snapshot = SnapshotCodec.decode(new DataInputStream(new ByteArrayInputStream(payload)), sequence -> {
+            Snapshot candidate = received[sequence % received.length];
+            return candidate != null && candidate.getSequence() == sequence ? candidate : null;
+        });
+        received[snapshot.getSequence() % received.length] = snapshot;
+        long now = System.nanoTime();
+        if (measuring) {
+            frames++;
+        }
+
+        int ship = snapshot.findShip(bot.playerId);
+        bot.shipX = ship >= 0 ? snapshot.getX(ship) : Integer.MIN_VALUE;
+        if (bot.pendingFromX != Integer.MIN_VALUE && bot.shipX != Integer.MIN_VALUE && bot.shipX != bot.pendingFromX) {
+            if (measuring) {
+                latency.recordValue(Math.min(HIGHEST_LATENCY_MICROS, (now - bot.pendingSince) / 1000));
+            }
+            bot.pendingFromX = Integer.MIN_VALUE;
+        }
+        if (snapshot.isGameOver() && !bot.gameOver) {
+            bot.gameOver = true;
+            gamesOver++;
+        }
+
+        if (bot.writeBuffer.remaining() >= 9) {
+            bot.writeBuffer.putInt(5).put(Protocol.FRAME_ACK).putInt(snapshot.getSequence());
+            flush(bot);
+        }
+    }
+
+    private void sendDueInputs(long now) throws IOException {
+        for (Bot bot : all) {
+            if (!bot.handshakeDone || !bot.channel.isOpen() || now - bot.nextInputNanos < 0) {
+                continue;
+            }
+            bot.nextInputNanos += inputIntervalNanos;
+            if (now - bot.nextInputNanos > inputIntervalNanos) {
+                bot.nextInputNanos = now + inputIntervalNanos; // el bucle va atrasado: no recuperar entradas
+            }
+            if (bot.pendingFromX != Integer.MIN_VALUE && now - bot.pendingSince > INPUT_TIMEOUT_NANOS) {
+                if (measuring) {
+                    timeouts++;
+                }
+                bot.pendingFromX = Integer.MIN_VALUE;
+            }
+            if (bot.gameOver || bot.shipX == Integer.MIN_VALUE) {
+                continue;
+            }
+            int input = nextInput(bot);
+            if (bot.writeBuffer.remaining() < 10) {
+                if (measuring) {
+                    droppedInputs++;
+                }
+                continue;
+            }
+            // Solo se mide un movimiento a la vez: los siguientes no cambian la referencia
+            if (input != SHOOT && bot.pendingFromX == Integer.MIN_VALUE) {
+                bot.pendingFromX = bot.shipX;
+                bot.pendingSince = System.nanoTime();
+            }
+            // Como el cliente: una muestra numerada por envío, con la entrada como bit de la máscara
+            bot.writeBuffer.putInt(6).put(Protocol.FRAME_INPUT_STATE).put((byte) (1 << input)).putInt(++bot.inputSequence);
+            flush(bot);
+            if (measuring) {
+                inputs++;
+            }
+        }
+    }
+
+    private int nextInput(Bot bot) {
+        int step = bot.step++;
+        int input;
+        if (zigzag) {
+            input = step % 4 == 3 ? SHOOT : (step / 4) % 4 < 2 ? LEFT : RIGHT;
+        } else {
+            input = random.nextInt(3);
+        }
+        // Cerca de un borde el movimiento no cambiaría la nave: ir hacia el centro
+        if (input == LEFT && bot.shipX < 32) {
+            input = RIGHT;
+        } else if (input == RIGHT && bot.shipX > BOARD_WIDTH - 64) {
+            input = LEFT;
+        }
+        return input;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = 12345;
+        int bots = 500;
+        int rooms = 1;
+        int seconds = 20;
+        int inputRate = 5;
+        boolean zigzag = false;
+        long seed = 42;
+        String report = null;
+        String transport = null;
+        String label = "externo";
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--host=")) host = value;
+            else if (arg.startsWith("--port=")) port = Integer.parseInt(value);
+            else if (arg.startsWith("--bots=")) bots = Integer.parseInt(value);
+            else if (arg.startsWith("--rooms=")) rooms = Integer.parseInt(value);
+            else if (arg.startsWith("--seconds=")) seconds = Integer.parseInt(value);
+            else if (arg.startsWith("--input-rate=")) inputRate = Integer.parseInt(value);
+            else if (arg.startsWith("--script=")) zigzag = value.equals("zigzag");
+            else if (arg.startsWith("--seed=")) seed = Long.parseLong(value);
+            else if (arg.startsWith("--report=")) report = value;
+            else if (arg.startsWith("--transport=")) transport = value;
+            else if (arg.startsWith("--label=")) label = value;
+        }
+
+        GameServer server = null;
+        if (transport != null) {
+            server = new GameServer(port, Transport.parse(transport), 2);
+            server.start();
+            label = transport;
+        }
+        try {
+            BotLoadTest test = new BotLoadTest(host, port, bots, rooms, seconds, inputRate, zigzag, seed);
+            test.run(label);
+            if (report != null) {
+                try (PrintStream out = new PrintStream(new FileOutputStream(report))) {
+                    test.writeReport(out);
+                }
+                System.out.println("Distribución de latencias escrita en " + report);
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,332 @@
+package loadtest;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import messages.Protocol;
+import server.GameServer;
+import server.Transport;
+
+/*
+ * Abre N conexiones binarias contra un GameServer y mide cómo llegan los snapshots.
+ * Todas las conexiones se manejan desde un único Selector, así que el cliente no influye
+ * en el número de hilos del servidor.
+ *
+ *   --transport=blocking|virtual|nio  arranca el servidor en este mismo proceso
+ *   --host=H --port=P                 o se conecta a uno externo (--server-pid=PID para leer /proc)
+ *   --connections=N --seconds=S
+ *   --rooms=R                         reparte las conexiones entre R salas (carga-0 .. carga-R-1)
+ */
+public class ConnectionLoadTest {
+    private static final int MAX_PENDING_CONNECTS = 200;
+    private static final int WARMUP_SECONDS = 3;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int rooms;
+    private final int seconds;
+    private final long serverPid;
+
+    private final Selector selector;
+    private final List<Connection> all = new ArrayList<>();
+    private int pendingConnects;
+    private int ready;
+    private int disconnects;
+    private boolean measuring;
+    private long frames;
+    private long bytes;
+    private final long[] gapHistogramMillis = new long[1001];
+
+    public ConnectionLoadTest(String host, int port, int connections, int rooms, int seconds, long serverPid)
+            throws IOException {
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.rooms = rooms;
+        this.seconds = seconds;
+        this.serverPid = serverPid;
+        this.selector = Selector.open();
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        final String room;
+        final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+        ByteBuffer pendingWrite;
+        boolean handshakeDone;
+        int skip;
+        long lastFrameNanos;
+
+        Connection(SocketChannel channel, String room) {
+            this.channel = channel;
+            this.room = room;
+        }
+    }
+
+    public void run(String label) throws IOException {
+        long connectStart = System.nanoTime();
+        int opened = 0;
+        while (ready + disconnects < connections) {
+            while (opened < connections && pendingConnects < MAX_PENDING_CONNECTS) {
+                open();
+                opened++;
+            }
+            poll(100);
+        }
+        long connectMillis = (System.nanoTime() - connectStart) / 1_000_000;
+
+        long warmupEnd = System.nanoTime() + WARMUP_SECONDS * 1_000_000_000L;
+        while (System.nanoTime() < warmupEnd) {
+            poll(50);
+        }
+
+        measuring = true;
+        int disconnectsBefore = disconnects;
+        long measureStart = System.nanoTime();
+        long measureEnd = measureStart + seconds * 1_000_000_000L;
+        while (System.nanoTime() < measureEnd) {
+            poll(50);
+        }
+        double elapsed = (System.nanoTime() - measureStart) / 1e9;
+        measuring = false;
+
+        String[] server = sampleServer();
+        System.out.printf("%-10s conexiones=%d salas=%d listas=%d conexión=%d ms hilos=%s memoria=%s " +
+                        "snapshots/s por cliente=%.1f hueco p50=%d ms p99=%d ms máx=%d ms tráfico=%.2f MB/s desconexiones=%d%n",
+                label, connections, rooms, ready, connectMillis, server[0], server[1],
+                frames / elapsed / Math.max(1, ready),
+                gapPercentile(0.50), gapPercentile(0.99), gapPercentile(1.0),
+                bytes / elapsed / (1024 * 1024), disconnects - disconnectsBefore);
+
+        for (Connection connection : all) {
+            connection.channel.close();
+        }
+        selector.close();
+    }
+
+    private void open() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel, rooms > 1 ? "carga-" + all.size() % rooms : Protocol.DEFAULT_ROOM);
+        all.add(connection);
+        pendingConnects++;
+        if (channel.connect(new InetSocketAddress(host, port))) {
+            onConnected(connection, channel.register(selector, 0, connection));
+        } else {
+            channel.register(selector, SelectionKey.OP_CONNECT, connection);
+        }
+    }
+
+    private void poll(long timeoutMillis) throws IOException {
+        selector.select(timeoutMillis);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    connection.channel.finishConnect();
+                    onConnected(connection, key);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.channel.write(connection.pendingWrite);
+                    if (!connection.pendingWrite.hasRemaining()) {
+                        connection.pendingWrite = null;
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+                if (key.isValid() && key.isReadable()) {
+                    onReadable(connection, key);
+                }
+            } catch (IOException e) {
+                if (!connection.handshakeDone) {
+                    pendingConnects--;
+                }
+                disconnects++;
+                key.cancel();
+                connection.channel.close();
+            }
+        }
+    }
+
+    private void onConnected(Connection connection, SelectionKey key) throws IOException {
+        byte[] room = connection.room.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer handshake = ByteBuffer.allocate(9 + room.length);
+        handshake.putInt(Protocol.MAGIC).put(Protocol.VERSION).put(Protocol.BINARY)
+                .put(Protocol.ROOM_JOIN).putShort((short) room.length).put(room).flip();
+        send(connection, key, handshake);
+    }
+
+    private void send(Connection connection, SelectionKey key, ByteBuffer buffer) throws IOException {
+        if (connection.pendingWrite != null) {
+            return; // los ACK son acumulativos: si hay uno pendiente, se descarta el nuevo
+        }
+        connection.channel.write(buffer);
+        if (buffer.hasRemaining()) {
+            connection.pendingWrite = buffer;
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void onReadable(Connection connection, SelectionKey key) throws IOException {
+        ByteBuffer buffer = connection.readBuffer;
+        int read = connection.channel.read(buffer);
+        if (read < 0) {
+            throw new IOException("closed by server");
+        }
+        if (measuring) {
+            bytes += read;
+        }
+        buffer.flip();
+        if (!connection.handshakeDone) {
+            // MAGIC + protocolo + playerId + nombre de la sala (writeUTF)
+            if (buffer.remaining() < 11 || buffer.remaining() < 11 + (buffer.getShort(buffer.position() + 9) & 0xFFFF)) {
+                buffer.compact();
+                return;
+            }
+            if (buffer.getInt() != Protocol.MAGIC || buffer.get() != Protocol.BINARY) {
+                throw new IOException("unexpected handshake");
+            }
+            buffer.getInt(); // playerId
+            int roomLength = buffer.getShort() & 0xFFFF;
+            buffer.position(buffer.position() + roomLength);
+            connection.handshakeDone = true;
+            pendingConnects--;
+            ready++;
+        }
+        // Solo hacen falta la longitud, el tipo y la secuencia; el resto del frame se descarta sin almacenarlo
+        while (true) {
+            if (connection.skip > 0) {
+                int skipped = Math.min(connection.skip, buffer.remaining());
+                buffer.position(buffer.position() + skipped);
+                connection.skip -= skipped;
+                if (connection.skip > 0) {
+                    break;
+                }
+            }
+            if (buffer.remaining() < 4) {
+                break;
+            }
+            int start = buffer.position();
+            int frameSize = 4 + buffer.getInt(start);
+            if (buffer.remaining() < Math.min(frameSize, 9)) {
+                break;
+            }
+            if (buffer.get(start + 4) == Protocol.FRAME_SNAPSHOT) {
+                int sequence = buffer.getInt(start + 5);
+                onSnapshot(connection);
+                ByteBuffer ack = ByteBuffer.allocate(9);
+                ack.putInt(5).put(Protocol.FRAME_ACK).putInt(sequence).flip();
+                send(connection, key, ack);
+            }
+            int consumed = Math.min(frameSize, buffer.remaining());
+            buffer.position(start + consumed);
+            connection.skip = frameSize - consumed;
+        }
+        buffer.compact();
+    }
+
+    private void onSnapshot(Connection connection) {
+        long now = System.nanoTime();
+        if (measuring) {
+            frames++;
+            if (connection.lastFrameNanos != 0) {
+                int gap = (int) Math.min(1000, (now - connection.lastFrameNanos) / 1_000_000);
+                gapHistogramMillis[gap]++;
+            }
+        }
+        connection.lastFrameNanos = now;
+    }
+
+    private int gapPercentile(double percentile) {
+        long total = 0;
+        for (long count : gapHistogramMillis) {
+            total += count;
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < gapHistogramMillis.length; i++) {
+            seen += gapHistogramMillis[i];
+            if (seen >= target && seen > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    // {hilos, memoria} del servidor: /proc si es externo, MXBeans si está en este proceso
+    private String[] sampleServer() {
+        if (serverPid > 0) {
+            try {
+                String threads = "?";
+                String rss = "?";
+                for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(serverPid), "status"))) {
+                    if (line.startsWith("Threads:")) threads = line.substring(8).trim();
+                    if (line.startsWith("VmRSS:")) rss = line.substring(6).trim();
+                }
+                return new String[] {threads, "RSS " + rss};
+            } catch (IOException e) {
+                return new String[] {"?", "?"};
+            }
+        }
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        return new String[] {
+                String.valueOf(ManagementFactory.getThreadMXBean().getThreadCount()),
+                "heap " + heap / (1024 * 1024) + " MB"
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = 12345;
+        int connections = 1000;
+        int rooms = 1;
+        int seconds = 20;
+        long serverPid = 0;
+        String transport = null;
+        String label = "externo";
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--host=")) host = value;
+            else if (arg.startsWith("--port=")) port = Integer.parseInt(value);
+            else if (arg.startsWith("--connections=")) connections = Integer.parseInt(value);
+            else if (arg.startsWith("--rooms=")) rooms = Integer.parseInt(value);
+            else if (arg.startsWith("--seconds=")) seconds = Integer.parseInt(value);
+            else if (arg.startsWith("--server-pid=")) serverPid = Long.parseLong(value);
+            else if (arg.startsWith("--transport=")) transport = value;
+            else if (arg.startsWith("--label=")) label = value;
+        }
+
+        GameServer server = null;
+        if (transport != null) {
+            server = new GameServer(port, Transport.parse(transport), 2);
+            server.start();
+            label = transport;
+        }
+        try {
+            new ConnectionLoadTest(host, port, connections, rooms, seconds, serverPid).run(label);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+        System.exit(0);
+    }
+}
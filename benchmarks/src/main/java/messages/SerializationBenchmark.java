@@ -0,0 +1,114 @@
+package messages;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.BenchmarkStates;
+import game.GameState;
+
+/*
+ * Tamaño y rendimiento de los dos formatos de estado: Message por ObjectOutputStream (protocolo
+ * serializado) y Snapshot binario completo o delta contra el tick anterior (protocolo binario).
+ * Los tamaños de cada formato se imprimen en el setup. Está en el paquete messages para usar los
+ * mismos métodos de codificación que SnapshotEncoder.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar SerializationBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dspaceinvaders.quiet=true")
+public class SerializationBenchmark {
+    @Param({"52", "512", "2048"})
+    public int aliens;
+
+    private Message message;
+    private Snapshot previous;
+    private Snapshot current;
+    private byte[] serialized;
+    private byte[] fullPayload;
+    private byte[] deltaPayload;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+
+    @Setup
+    public void setup() throws IOException {
+        GameState state = BenchmarkStates.create(4, aliens, 30);
+        previous = Snapshot.capture(0, state);
+        state.handleInput(0, "SHOOT");
+        state.update(31, 1.0 / 30);
+        current = Snapshot.capture(1, state);
+
+        message = new Message("UPDATE_STATE");
+        message.setObjects(state.getGameObjects());
+        message.setGameOver(state.isGameOver());
+        message.setPlayerScores(new HashMap<>(state.getPlayerScores()));
+
+        serialized = javaSerialize();
+        fullPayload = binaryEncode(current, null);
+        deltaPayload = binaryEncode(current, previous);
+        System.out.printf("%nTamaño con %d entidades: serializado %d B, binario completo %d B, delta %d B%n",
+                current.getEntityCount(), serialized.length, fullPayload.length, deltaPayload.length);
+    }
+
+    @Benchmark
+    public byte[] javaSerialize() throws IOException {
+        buffer.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(message);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public Object javaDeserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public byte[] binaryEncodeFull() throws IOException {
+        return binaryEncode(current, null);
+    }
+
+    @Benchmark
+    public byte[] binaryEncodeDelta() throws IOException {
+        return binaryEncode(current, previous);
+    }
+
+    @Benchmark
+    public Snapshot binaryDecodeFull() throws IOException {
+        return SnapshotCodec.decode(new DataInputStream(new ByteArrayInputStream(fullPayload)), sequence -> null);
+    }
+
+    @Benchmark
+    public Snapshot binaryDecodeDelta() throws IOException {
+        return SnapshotCodec.decode(new DataInputStream(new ByteArrayInputStream(deltaPayload)), sequence -> previous);
+    }
+
+    private byte[] binaryEncode(Snapshot snapshot, Snapshot baseline) throws IOException {
+        buffer.reset();
+        SnapshotCodec.encode(snapshot, baseline, new DataOutputStream(buffer));
+        return buffer.toByteArray();
+    }
+}
@@ -1,61 +1,150 @@
 package client;
 import java.net.*;
 
+import messages.EncodedSnapshot;
+import messages.FrameBytes;
 import messages.Message;
+import messages.Protocol;
 import game.GameState;
+import server.ClientConnection;
+import server.Room;
+import server.RoomManager;
+import server.SnapshotMailbox;
 
 import java.io.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import logging.Log;
+import logging.LogLimit;
+
+public class ClientHandler implements Runnable, ClientConnection {
+    // Mensajes recibidos: uno por muestra de entrada de cada cliente, solo en DEBUG y con límite
+    private static final LogLimit MESSAGE_LOG = LogLimit.perSecond(20);
+    private static final LogLimit ERROR_LOG = LogLimit.perSecond(10);
 
-public class ClientHandler extends Thread {
     private Socket socket;
     private ObjectOutputStream out;
     private ObjectInputStream in;
+    private DataOutputStream dataOut;
+    private DataInputStream dataIn;
+    private byte protocol;
+    private final RoomManager rooms;
+    // Sala e ID asignados en el handshake
+    private RoomManager.Seat seat;
+    private Room room;
     private GameState gameState;
-    private int playerId;
+    private int playerId = -1;
     private volatile boolean running = true;
+    private Thread thread;
+    private Thread writerThread;
+    // ReentrantLock en lugar de synchronized: un hilo virtual bloqueado en la escritura no fija su carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private OutputStream rawOut;
+    // Último snapshot confirmado por el cliente, base de los deltas
+    private volatile int ackedSequence = -1;
+    // El hilo del tick deja aquí el último snapshot; el hilo escritor lo envía
+    private final SnapshotMailbox mailbox;
+    private final AtomicBoolean disconnected = new AtomicBoolean();
 
-    public ClientHandler(Socket socket, GameState gameState, int playerId) throws IOException {
+    public ClientHandler(Socket socket, RoomManager rooms, SnapshotMailbox mailbox) throws IOException {
         this.socket = socket;
-        this.gameState = gameState;
-        this.playerId = playerId;
+        this.rooms = rooms;
+        this.mailbox = mailbox;
 
         try {
             // Set socket timeout to avoid hanging on read operations
             socket.setSoTimeout(10000); // 10 seconds timeout
 
-            // Initialize output stream first
-            this.out = new ObjectOutputStream(socket.getOutputStream());
-            this.out.flush();
-
-            // Initialize input stream
-            this.in = new ObjectInputStream(socket.getInputStream());
-
-            // Send player ID to client
-            this.out.writeInt(playerId);
-            this.out.flush();
+            negotiateProtocol();
 
-            // Add player to game state
-            gameState.addPlayer(playerId);
+            // La nave se añade en el siguiente tick de la sala
+            gameState.queueAddPlayer(playerId);
 
             // Send initial game state
             sendInitialState();
 
-            System.out.println("Manejador de cliente inicializado para el jugador: " + playerId);
+            Log.info("Manejador de cliente inicializado").with("jugador", playerId).with("sala", room.getName())
+                    .with("protocolo", protocol == Protocol.BINARY ? "binario" : "serializado").log();
         } catch (IOException e) {
-            System.err.println("Error initializing client handler for player " + playerId + ": " + e.getMessage());
+            Log.error("Error initializing client handler").with("jugador", playerId).with("error", e.getMessage()).log();
             closeResources();
+            if (seat != null) {
+                rooms.leave(seat);
+            }
             throw e;
         }
     }
 
+    private void negotiateProtocol() throws IOException {
+        BufferedInputStream rawIn = new BufferedInputStream(socket.getInputStream());
+        rawOut = new BufferedOutputStream(socket.getOutputStream());
+
+        // Los clientes antiguos empiezan directamente con la cabecera de ObjectOutputStream
+        rawIn.mark(2);
+        int header = (rawIn.read() << 8) | rawIn.read();
+        rawIn.reset();
+
+        if (header == Protocol.JAVA_STREAM_MAGIC) {
+            // Los clientes antiguos no eligen sala: van a la sala por defecto
+            protocol = Protocol.SERIALIZED;
+            joinRoom(Protocol.ROOM_JOIN, Protocol.DEFAULT_ROOM);
+        } else {
+            DataInputStream handshakeIn = new DataInputStream(rawIn);
+            if (handshakeIn.readInt() != Protocol.MAGIC) {
+                throw new IOException("Invalid handshake from " + socket.getRemoteSocketAddress());
+            }
+            byte version = handshakeIn.readByte();
+            byte requested = handshakeIn.readByte();
+            protocol = Protocol.negotiate(version, requested);
+            if (version >= Protocol.ROOMS_VERSION) {
+                byte operation = handshakeIn.readByte();
+                joinRoom(operation, Protocol.checkRoomName(handshakeIn.readUTF()));
+            } else {
+                joinRoom(Protocol.ROOM_JOIN, Protocol.DEFAULT_ROOM);
+            }
+
+            DataOutputStream handshakeOut = new DataOutputStream(rawOut);
+            handshakeOut.writeInt(Protocol.MAGIC);
+            handshakeOut.writeByte(protocol);
+            handshakeOut.writeInt(playerId);
+            if (version >= Protocol.ROOMS_VERSION) {
+                handshakeOut.writeUTF(room.getName());
+            }
+            handshakeOut.flush();
+        }
+
+        if (protocol == Protocol.BINARY) {
+            this.dataOut = new DataOutputStream(rawOut);
+            this.dataIn = new DataInputStream(rawIn);
+            return;
+        }
+
+        // Initialize output stream first
+        this.out = new ObjectOutputStream(rawOut);
+        this.out.flush();
+
+        // Initialize input stream
+        this.in = new ObjectInputStream(rawIn);
+
+        if (header == Protocol.JAVA_STREAM_MAGIC) {
+            // Send player ID to client
+            this.out.writeInt(playerId);
+            this.out.flush();
+        }
+    }
+
+    private void joinRoom(byte operation, String name) {
+        seat = rooms.join(operation, name);
+        room = seat.getRoom();
+        gameState = room.getGameState();
+        playerId = seat.getPlayerId();
+    }
+
     private void sendInitialState() throws IOException {
-        Message initialState = new Message("UPDATE_STATE");
-        initialState.setObjects(gameState.getGameObjects());
-        initialState.setScore(gameState.getScore(playerId));
-        initialState.setGameOver(gameState.isGameOver());
-        initialState.setPlayerScores(gameState.getPlayerScores());
-        sendMessage(initialState);
-        System.out.println("Estado inicial del juego enviado al jugador: " + playerId);
+        sendFrame(frameFor(room.encodeState()));
+        Log.debug("Estado inicial del juego enviado").with("jugador", playerId).log();
     }
 
     @Override
@@ -63,38 +152,72 @@ public class ClientHandler extends Thread {
         try {
             while (running && !socket.isClosed()) {
                 try {
+                    if (protocol == Protocol.BINARY) {
+                        readFrame();
+                        continue;
+                    }
                     Object obj = in.readObject();
                     if (obj instanceof Message) {
                         Message message = (Message) obj;
-                        System.out.println("Mensaje recibido del jugador " + playerId + ": " + message);
+                        Log.debug(MESSAGE_LOG, "Mensaje recibido").with("jugador", playerId)
+                                .with("accion", message.getAction()).with("entradas", message.getInputs())
+                                .with("secuencia", message.getInputSequence()).log();
 
                         if (message.getAction().equals("PLAYER_INPUT")) {
-                            System.out.println("Entrada del jugador " + playerId + ": " + message.getInput());
-                            gameState.handleInput(playerId, message.getInput());
-
-                            // Send immediate update after input
-                            sendMessage(createUpdateMessage());
+                            onInput(message.getInputs() != 0 ? message.getInputs() : GameState.inputBit(message.getInput()),
+                                    message.getInputSequence());
                         }
                     } else {
-                        System.err.println("Received unknown object type from player " + playerId + ": " + (obj != null ? obj.getClass().getName() : "null"));
+                        Log.warn(ERROR_LOG, "Received unknown object type").with("jugador", playerId)
+                                .with("tipo", obj != null ? obj.getClass().getName() : "null").log();
                     }
                 } catch (ClassNotFoundException e) {
-                    System.err.println("Error reading message from client " + playerId + ": " + e.getMessage());
-                    e.printStackTrace();
+                    Log.warn(ERROR_LOG, "Error reading message from client").with("jugador", playerId).with("error", e).log();
                 } catch (SocketTimeoutException e) {
-                    System.out.println("Tiempo de espera del socket para el jugador " + playerId + " - verificando estado de la conexión");
+                    Log.debug("Tiempo de espera del socket, verificando la conexión").with("jugador", playerId).log();
                     if (!checkConnection()) {
                         throw new IOException("Client not responding");
                     }
                 }
             }
         } catch (IOException e) {
-            System.err.println("Client " + playerId + " disconnected: " + e.getMessage());
+            Log.info("Client disconnected").with("jugador", playerId).with("motivo", e.getMessage()).log();
         } finally {
             disconnect();
         }
     }
 
+    private void readFrame() throws IOException {
+        Protocol.Frame frame = Protocol.readFrame(dataIn);
+        switch (frame.getType()) {
+            case Protocol.FRAME_INPUT:
+                // Formato anterior: una entrada por frame, con secuencia opcional
+                DataInputStream payload = frame.payload();
+                int inputs = GameState.inputBit(Protocol.inputName(payload.readUnsignedByte()));
+                onInput(inputs, payload.available() >= 4 ? payload.readInt() : 0);
+                break;
+            case Protocol.FRAME_INPUT_STATE:
+                DataInputStream state = frame.payload();
+                onInput(state.readUnsignedByte(), state.readInt());
+                break;
+            case Protocol.FRAME_ACK:
+                int sequence = frame.payload().readInt();
+                if (sequence > ackedSequence) {
+                    ackedSequence = sequence;
+                }
+                break;
+            case Protocol.FRAME_PING:
+                break;
+            default:
+                Log.warn(ERROR_LOG, "Unknown frame type").with("tipo", frame.getType()).with("jugador", playerId).log();
+        }
+    }
+
+    // La entrada se aplica en el siguiente tick y el cliente la ve en el broadcast normal
+    private void onInput(int inputs, int sequence) {
+        room.queueInput(playerId, inputs, sequence);
+    }
+
     private boolean checkConnection() {
         try {
             if (socket.isClosed() || !socket.isConnected()) {
@@ -105,43 +228,108 @@ public class ClientHandler extends Thread {
             sendMessage(ping);
             return true;
         } catch (IOException e) {
-            System.err.println("Connection check failed for player " + playerId + ": " + e.getMessage());
+            Log.warn("Connection check failed").with("jugador", playerId).with("error", e.getMessage()).log();
             return false;
         }
     }
 
-    private Message createUpdateMessage() {
-        Message update = new Message("UPDATE_STATE");
-        update.setObjects(gameState.getGameObjects());
-        update.setScore(gameState.getScore(playerId));
-        update.setGameOver(gameState.isGameOver());
-        update.setPlayerScores(gameState.getPlayerScores());
-        return update;
-    }
-
     public void sendMessage(Message message) throws IOException {
+        if (message.getAction().equals("UPDATE_STATE")) {
+            sendFrame(frameFor(room.encode(message)));
+            return;
+        }
         if (socket.isClosed()) {
             throw new IOException("Socket is closed for player " + playerId);
         }
 
+        writeLock.lock();
         try {
-            synchronized (out) {
+            if (protocol == Protocol.BINARY) {
+                if (message.getAction().equals("PING")) {
+                    Protocol.writePing(dataOut);
+                    dataOut.flush();
+                }
+            } else {
+                out.reset();
                 out.writeObject(message);
                 out.flush();
-                out.reset();
             }
         } catch (IOException e) {
-            System.err.println("Error sending message to client " + playerId + ": " + e.getMessage());
+            Log.warn(ERROR_LOG, "Error sending message to client").with("jugador", playerId).with("error", e.getMessage()).log();
             disconnect();
             throw e;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Elige entre los bytes compartidos del snapshot los que corresponden a esta conexión
+    private FrameBytes frameFor(EncodedSnapshot snapshot) {
+        FrameBytes frame = protocol == Protocol.BINARY ? snapshot.binaryFrame(ackedSequence) : snapshot.serializedFrame();
+        mailbox.recordFrame(frame);
+        return frame;
+    }
+
+    @Override
+    public void publish(EncodedSnapshot snapshot) {
+        mailbox.offer(snapshot);
+    }
+
+    @Override
+    public long getCoalescedSnapshots() {
+        return mailbox.getCoalesced();
+    }
+
+    @Override
+    public SnapshotMailbox.Traffic getSnapshotTraffic() {
+        return mailbox.getTraffic();
+    }
+
+    // Envía siempre el snapshot más reciente; los que llegan mientras escribe se coalescen
+    private void writeLoop() {
+        try {
+            EncodedSnapshot snapshot;
+            while ((snapshot = mailbox.take()) != null) {
+                long start = System.nanoTime();
+                sendFrame(frameFor(snapshot));
+                mailbox.recordWrite(System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // sendFrame ya ha desconectado al cliente
+        }
+    }
+
+    private void sendFrame(FrameBytes frame) throws IOException {
+        if (socket.isClosed()) {
+            throw new IOException("Socket is closed for player " + playerId);
+        }
+
+        writeLock.lock();
+        try {
+            frame.writeTo(rawOut);
+            rawOut.flush();
+        } catch (IOException e) {
+            Log.warn(ERROR_LOG, "Error sending message to client").with("jugador", playerId).with("error", e.getMessage()).log();
+            disconnect();
+            throw e;
+        } finally {
+            writeLock.unlock();
         }
     }
 
     private void disconnect() {
+        if (!disconnected.compareAndSet(false, true)) {
+            return;
+        }
         running = false;
+        mailbox.close();
         closeResources();
-        gameState.removePlayer(playerId);
-        System.out.println("Manejador de cliente para el jugador " + playerId + " desconectado");
+        room.remove(this);
+        gameState.queueRemovePlayer(playerId);
+        rooms.leave(seat);
+        Log.info("Manejador de cliente desconectado").with("jugador", playerId).log();
     }
 
     private void closeResources() {
@@ -150,28 +338,58 @@ public class ClientHandler extends Thread {
                 in.close();
             }
         } catch (IOException e) {
-            System.err.println("Error closing input stream for player " + playerId + ": " + e.getMessage());
+            Log.warn("Error closing input stream").with("jugador", playerId).with("error", e.getMessage()).log();
+        }
+        try {
+            if (dataIn != null) {
+                dataIn.close();
+            }
+        } catch (IOException e) {
+            Log.warn("Error closing input stream").with("jugador", playerId).with("error", e.getMessage()).log();
         }
         try {
             if (out != null) {
                 out.close();
             }
+            if (dataOut != null) {
+                dataOut.close();
+            }
         } catch (IOException e) {
-            System.err.println("Error closing output stream for player " + playerId + ": " + e.getMessage());
+            Log.warn("Error closing output stream").with("jugador", playerId).with("error", e.getMessage()).log();
         }
         try {
             if (socket != null && !socket.isClosed()) {
                 socket.close();
-                System.out.println("Socket del cliente cerrado para el jugador: " + playerId);
+                Log.debug("Socket del cliente cerrado").with("jugador", playerId).log();
             }
         } catch (IOException e) {
-            System.err.println("Error closing socket for player " + playerId + ": " + e.getMessage());
+            Log.warn("Error closing socket").with("jugador", playerId).with("error", e.getMessage()).log();
         }
     }
 
     @Override
-    public void interrupt() {
-        super.interrupt();
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    // Hilo de plataforma o virtual según el Thread.Builder que pase el servidor
+    public void start(Thread.Builder builder) {
+        thread = builder.name("ClientHandler-" + playerId).start(this);
+        writerThread = builder.name("ClientWriter-" + playerId).start(this::writeLoop);
+    }
+
+    public Room getRoom() {
+        return room;
+    }
+
+    @Override
+    public void close() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
         disconnect();
     }
 }
\ No newline at end of file
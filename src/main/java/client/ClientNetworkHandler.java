@@ -1,20 +1,38 @@
 package client;
 import javax.swing.*;
 
+import game.EntityType;
 import game.GameObject;
+import game.GameState;
 import messages.Message;
+import messages.Protocol;
+import messages.Snapshot;
+import messages.SnapshotCodec;
 
 import java.net.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ClientNetworkHandler extends Thread {
     private Socket socket;
     private ObjectOutputStream out;
     private ObjectInputStream in;
-    private ArrayList<GameObject> gameObjects = new ArrayList<>();
-    private int score = 0;
-    private boolean gameOver = false;
+    private DataOutputStream dataOut;
+    private DataInputStream dataIn;
+    private byte protocol;
+    private final Object writeLock = new Object();
+    private Snapshot[] receivedSnapshots = new Snapshot[64];
+    // Lo que lee el hilo de dibujo en cada frame se publica en campos volatile, sin bloqueos:
+    // cada estado recibido sustituye la lista y el mapa de puntuaciones, nunca se modifican después
+    private volatile ArrayList<GameObject> gameObjects = new ArrayList<>();
+    // Nave propia del último estado con la posición predicha; predict publica una copia nueva
+    private volatile GameObject ownShip;
+    // El servidor añade la nave en el tick siguiente a la conexión: los primeros estados pueden no traerla
+    private volatile boolean spawned;
+    private volatile boolean gameOver = false;
     private int playerId;
     private GameClient client;
     private boolean connected = false;
@@ -23,43 +41,114 @@ public class ClientNetworkHandler extends Thread {
     private static final int MAX_RECONNECT_ATTEMPTS = 3;
     private String serverIp;
     private int serverPort;
-    private Map<Integer, Integer> playerScores = new HashMap<>();
+    // Sala pedida en el handshake; tras conectar guarda el nombre real para reconectar a la misma
+    private byte roomOperation;
+    private String roomName;
+    private volatile Map<Integer, Integer> playerScores = Collections.emptyMap();
+    // Predicción de la nave propia: movimientos enviados que el servidor aún no ha confirmado.
+    // Se aplican en local al enviarlos y se vuelven a aplicar sobre cada estado autoritativo.
+    private final ArrayDeque<PendingInput> pendingInputs = new ArrayDeque<>();
+    private int nextInputSequence = 1;
+    // Teclas pulsadas ahora y pulsadas desde el último muestreo, como máscaras GameState.INPUT_*
+    private int heldInputs;
+    private int pressedInputs;
+    private static final int INPUT_RATE = Integer.getInteger("spaceinvaders.inputRate", 30);
+    private final ScheduledExecutorService inputSampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "InputSampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Estados recibidos para que GameClient dibuje interpolando con retraso fijo
+    private final SnapshotBuffer receivedStates = new SnapshotBuffer();
+
+    private static final class PendingInput {
+        final int sequence;
+        final int inputs;
+
+        PendingInput(int sequence, int inputs) {
+            this.sequence = sequence;
+            this.inputs = inputs;
+        }
+    }
 
     public ClientNetworkHandler(String ip, int port) throws IOException {
+        this(ip, port, Protocol.ROOM_JOIN, Protocol.DEFAULT_ROOM);
+    }
+
+    public ClientNetworkHandler(String ip, int port, byte roomOperation, String roomName) throws IOException {
         this.serverIp = ip;
         this.serverPort = port;
+        this.roomOperation = roomOperation;
+        this.roomName = roomName;
         try {
-            socket = new Socket(ip, port);
-            out = new ObjectOutputStream(socket.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(socket.getInputStream());
-            playerId = in.readInt();
+            openConnection();
             connected = true;
-            System.out.println("Conectado al servidor con ID de jugador: " + playerId);
+            System.out.println("Conectado al servidor en la sala " + this.roomName + " con ID de jugador: " + playerId);
             socket.setSoTimeout(10000);
+            long period = 1_000_000_000L / INPUT_RATE;
+            inputSampler.scheduleAtFixedRate(this::sampleInput, period, period, TimeUnit.NANOSECONDS);
         } catch (IOException e) {
             System.err.println("Connection error: " + e.getMessage());
             throw new IOException("Failed to connect to server at " + ip + ":" + port, e);
         }
     }
 
+    private void openConnection() throws IOException {
+        socket = new Socket(serverIp, serverPort);
+        BufferedInputStream rawIn = new BufferedInputStream(socket.getInputStream());
+        OutputStream rawOut = new BufferedOutputStream(socket.getOutputStream());
+
+        DataOutputStream handshakeOut = new DataOutputStream(rawOut);
+        handshakeOut.writeInt(Protocol.MAGIC);
+        handshakeOut.writeByte(Protocol.VERSION);
+        handshakeOut.writeByte(Protocol.preferredProtocol());
+        Protocol.writeRoomRequest(handshakeOut, roomOperation, roomName);
+        handshakeOut.flush();
+
+        DataInputStream handshakeIn = new DataInputStream(rawIn);
+        if (handshakeIn.readInt() != Protocol.MAGIC) {
+            throw new IOException("Invalid handshake response from server");
+        }
+        protocol = handshakeIn.readByte();
+        playerId = handshakeIn.readInt();
+        roomName = handshakeIn.readUTF();
+        roomOperation = Protocol.ROOM_JOIN;
+        receivedSnapshots = new Snapshot[64];
+        synchronized (this) {
+            // Conexión nueva: el servidor empieza de cero la numeración de este jugador
+            pendingInputs.clear();
+            nextInputSequence = 1;
+        }
+        receivedStates.clear();
+
+        if (protocol == Protocol.BINARY) {
+            dataOut = handshakeOut;
+            dataIn = handshakeIn;
+        } else {
+            out = new ObjectOutputStream(rawOut);
+            out.flush();
+            in = new ObjectInputStream(rawIn);
+        }
+    }
+
     @Override
     public void run() {
         try {
             while (connected) {
                 try {
+                    if (protocol == Protocol.BINARY) {
+                        readFrame();
+                        continue;
+                    }
                     Object obj = in.readObject();
                     if (obj instanceof Message) {
                         Message message = (Message) obj;
                         if (message.getAction().equals("UPDATE_STATE")) {
                             synchronized (this) {
-                                gameObjects = message.getObjects();
+                                setState(message.getObjects(), message.getInputSequences(), -1);
                                 gameOver = message.isGameOver();
-                                playerScores.clear();
-                                playerScores.putAll(message.getPlayerScores());
-                                score = playerScores.getOrDefault(playerId, 0);
+                                playerScores = new HashMap<>(message.getPlayerScores());
                             }
-                            updateClient();
                         } else {
                             System.err.println("Received unknown object type: " + obj.getClass().getName());
                         }
@@ -85,16 +174,104 @@ public class ClientNetworkHandler extends Thread {
         }
     }
 
+    private void readFrame() throws IOException {
+        Protocol.Frame frame = Protocol.readFrame(dataIn);
+        if (frame.getType() == Protocol.FRAME_PING) {
+            return;
+        }
+        if (frame.getType() != Protocol.FRAME_SNAPSHOT) {
+            System.err.println("Received unknown frame type: " + frame.getType());
+            return;
+        }
+
+        Snapshot snapshot = SnapshotCodec.decode(frame.payload(), sequence -> {
+            Snapshot candidate = receivedSnapshots[sequence % receivedSnapshots.length];
+            return candidate != null && candidate.getSequence() == sequence ? candidate : null;
+        });
+        receivedSnapshots[snapshot.getSequence() % receivedSnapshots.length] = snapshot;
+
+        synchronized (this) {
+            setState(snapshot.toGameObjects(), snapshot.getInputSequences(), snapshot.getServerTimeNanos());
+            gameOver = snapshot.isGameOver();
+            playerScores = new HashMap<>(snapshot.getPlayerScores());
+        }
+
+        // Confirmar el snapshot para que el servidor lo use como base de los siguientes deltas
+        synchronized (writeLock) {
+            Protocol.writeAck(dataOut, snapshot.getSequence());
+            dataOut.flush();
+        }
+    }
+
+    // serverTime: instante del estado en el reloj del servidor, o -1 si el protocolo no lo envía
+    private void setState(ArrayList<GameObject> objects, Map<Integer, Integer> inputSequences, long serverTime) {
+        Map<Integer, GameObject> byId = new HashMap<>(objects.size() * 2);
+        GameObject ship = null;
+        for (GameObject obj : objects) {
+            byId.put(obj.getId(), obj);
+            if (obj.getPlayerId() == playerId && obj.getEntityType() == EntityType.SHIP) {
+                ship = obj;
+            }
+        }
+        // La nave se corrige antes de publicar el estado: después ya la puede estar leyendo el dibujo
+        reconcile(ship, inputSequences);
+        gameObjects = objects;
+        ownShip = ship;
+        if (ship != null) {
+            spawned = true;
+        }
+        receivedStates.add(System.nanoTime(), serverTime, objects, byId);
+    }
+
+    // Descarta los movimientos ya aplicados por el servidor y reaplica el resto sobre la nave recibida
+    private void reconcile(GameObject ship, Map<Integer, Integer> inputSequences) {
+        Integer acked = inputSequences != null ? inputSequences.get(playerId) : null;
+        if (acked == null || ship == null) {
+            // Servidor sin numeración de entradas o jugador sin nave: no hay nada que predecir
+            pendingInputs.clear();
+            return;
+        }
+        while (!pendingInputs.isEmpty() && pendingInputs.peekFirst().sequence <= acked) {
+            pendingInputs.pollFirst();
+        }
+        for (PendingInput pending : pendingInputs) {
+            ship.setX(GameState.moveShip(ship.getX(), ship.getWidth(), pending.inputs));
+        }
+    }
+
+    // Mueve la nave propia sin esperar al servidor; la nave publicada no se toca, se publica una copia
+    private synchronized void predict(int sequence, int inputs) {
+        if ((inputs & (GameState.INPUT_LEFT | GameState.INPUT_RIGHT)) == 0) {
+            return;
+        }
+        GameObject ship = ownShip;
+        if (ship == null || !ship.isAlive() || gameOver) {
+            return;
+        }
+        pendingInputs.addLast(new PendingInput(sequence, inputs));
+        int x = GameState.moveShip(ship.getX(), ship.getWidth(), inputs);
+        if (x != ship.getX()) {
+            GameObject moved = new GameObject(ship);
+            moved.setX(x);
+            ownShip = moved;
+        }
+    }
+
     private boolean pingServer() {
         try {
             if (socket.isClosed() || !socket.isConnected()) {
                 return false;
             }
-            synchronized (out) {
-                Message ping = new Message("PING");
-                out.writeObject(ping);
-                out.flush();
-                out.reset();
+            synchronized (writeLock) {
+                if (protocol == Protocol.BINARY) {
+                    Protocol.writePing(dataOut);
+                    dataOut.flush();
+                } else {
+                    Message ping = new Message("PING");
+                    out.writeObject(ping);
+                    out.flush();
+                    out.reset();
+                }
             }
             return true;
         } catch (IOException e) {
@@ -112,11 +289,7 @@ public class ClientNetworkHandler extends Thread {
                 if (socket != null && !socket.isClosed()) {
                     socket.close();
                 }
-                socket = new Socket(serverIp, serverPort);
-                out = new ObjectOutputStream(socket.getOutputStream());
-                out.flush();
-                in = new ObjectInputStream(socket.getInputStream());
-                playerId = in.readInt();
+                openConnection();
                 connected = true;
                 reconnecting = false;
                 socket.setSoTimeout(10000);
@@ -144,28 +317,51 @@ public class ClientNetworkHandler extends Thread {
         }).start();
     }
 
-    private void updateClient() {
-        if (client != null) {
-            SwingUtilities.invokeLater(() -> {
-                client.repaint();
-            });
+    // Estado de una tecla (GameState.INPUT_LEFT, INPUT_RIGHT, INPUT_SHOOT) mientras está pulsada
+    public synchronized void setInputHeld(int input, boolean held) {
+        if (held) {
+            heldInputs |= input;
+            pressedInputs |= input;
+        } else {
+            heldInputs &= ~input;
         }
     }
 
-    public void sendInput(String input) {
-        if (!connected) {
-            System.out.println("No conectado - no se puede enviar entrada");
+    // Entrada puntual ("LEFT", "RIGHT", "SHOOT", "RESTART"): se envía una vez en el siguiente muestreo
+    public synchronized void sendInput(String input) {
+        pressedInputs |= GameState.inputBit(input);
+    }
+
+    // Cada 1/INPUT_RATE s: las teclas pulsadas, o pulsadas y soltadas desde el último muestreo,
+    // viajan en un solo frame numerado. Sin teclas no se envía nada.
+    private void sampleInput() {
+        int inputs;
+        synchronized (this) {
+            inputs = heldInputs | pressedInputs;
+            pressedInputs = 0;
+        }
+        if (inputs == 0 || !connected) {
             return;
         }
         try {
-            Message message = new Message("PLAYER_INPUT");
-            message.setInput(input);
-            message.setPlayerId(playerId);
-            System.out.println("Enviando entrada: " + input + " para el jugador: " + playerId);
-            synchronized (out) {
-                out.writeObject(message);
-                out.flush();
-                out.reset();
+            synchronized (writeLock) {
+                int sequence;
+                synchronized (this) {
+                    sequence = nextInputSequence++;
+                }
+                predict(sequence, inputs);
+                if (protocol == Protocol.BINARY) {
+                    Protocol.writeInputState(dataOut, inputs, sequence);
+                    dataOut.flush();
+                } else {
+                    Message message = new Message("PLAYER_INPUT");
+                    message.setInputs(inputs);
+                    message.setInputSequence(sequence);
+                    message.setPlayerId(playerId);
+                    out.writeObject(message);
+                    out.flush();
+                    out.reset();
+                }
             }
         } catch (IOException e) {
             System.err.println("Error sending input: " + e.getMessage());
@@ -178,15 +374,30 @@ public class ClientNetworkHandler extends Thread {
         }
     }
 
-    public synchronized ArrayList<GameObject> getGameObjects() {
-        return new ArrayList<>(gameObjects);
+    // La lista del último estado tal como llegó; no se modifica, el siguiente estado trae otra
+    public ArrayList<GameObject> getGameObjects() {
+        return gameObjects;
     }
 
-    public synchronized int getScore(int playerId) {
+    // Par de estados recibidos alrededor de renderTime (System.nanoTime), o null si aún no hay ninguno
+    SnapshotBuffer.Frame sampleStates(long renderTime) {
+        return receivedStates.sample(renderTime);
+    }
+
+    // La nave propia con la posición predicha: se dibuja sin retraso de interpolación
+    public GameObject getOwnShip() {
+        return ownShip;
+    }
+
+    public boolean hasSpawned() {
+        return spawned;
+    }
+
+    public int getScore(int playerId) {
         return playerScores.getOrDefault(playerId, 0);
     }
 
-    public synchronized boolean isGameOver() {
+    public boolean isGameOver() {
         return gameOver;
     }
 
@@ -194,6 +405,10 @@ public class ClientNetworkHandler extends Thread {
         return playerId;
     }
 
+    public String getRoomName() {
+        return roomName;
+    }
+
     public void setClient(GameClient client) {
         this.client = client;
     }
@@ -205,6 +420,7 @@ public class ClientNetworkHandler extends Thread {
     public void disconnect() {
         if (connected) {
             connected = false;
+            inputSampler.shutdownNow();
             System.out.println("Desconectando del servidor...");
             try {
                 if (socket != null && !socket.isClosed()) {
@@ -3,25 +3,65 @@ import javax.swing.*;
 
 import game.GameObject;
 import game.GameRenderer;
+import game.GameState;
+import messages.Protocol;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Ventana del juego con dibujo activo: un hilo propio dibuja cada frame en el back buffer de un
+ * BufferStrategy y lo muestra al ritmo de refresco de la pantalla, sin pasar por repaint() ni por
+ * el hilo de eventos de Swing. El estado lo publica ClientNetworkHandler sin bloqueos y el bucle
+ * toma siempre el último, así que el ritmo de los frames no depende de la llegada de paquetes.
+ */
+public class GameClient extends Canvas implements KeyListener {
+    // Se dibuja este tiempo por detrás del último estado recibido para tener siempre dos entre los que
+    // interpolar; con -Dspaceinvaders.interpolationDelay=ms se ajusta a la frecuencia de broadcast
+    private static final long INTERPOLATION_DELAY_NANOS =
+            Long.getLong("spaceinvaders.interpolationDelay", 100) * 1_000_000L;
+    // Sin -Dspaceinvaders.frameRate se usa la frecuencia de refresco de la pantalla (60 si no se conoce)
+    private static final int FRAME_RATE = Integer.getInteger("spaceinvaders.frameRate", 0);
+    private static final int DEFAULT_FRAME_RATE = 60;
+    // Frames que cubren las medias del HUD de tiempos
+    private static final int FRAME_SAMPLES = 120;
+    private static final long HUD_UPDATE_NANOS = 250_000_000L;
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 24);
+    private static final Font MESSAGE_FONT = new Font("Arial", Font.PLAIN, 16);
+    private static final Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
 
-public class GameClient extends JPanel implements KeyListener {
     private ClientNetworkHandler networkHandler;
     private GameRenderer renderer;
     private int playerId;
-    private boolean connectedToServer = false;
-    private boolean playerEliminated = false;
+    private volatile boolean connectedToServer = false;
+    private volatile boolean playerEliminated = false;
+    private volatile boolean running;
+    private volatile boolean showHud = true;
+    private Thread renderThread;
+    // Solo los usa el hilo de dibujo: duración de cada frame (dibujar y mostrar) e intervalo entre frames
+    private final long[] frameTimes = new long[FRAME_SAMPLES];
+    private final long[] frameIntervals = new long[FRAME_SAMPLES];
+    private int frameCount;
+    private long lastFrameStart;
+    private long lastHudUpdate;
+    private String hudText = "";
 
     public GameClient(String ip, int port) throws Exception {
+        this(ip, port, Protocol.ROOM_JOIN, Protocol.DEFAULT_ROOM);
+    }
+
+    public GameClient(String ip, int port, byte roomOperation, String roomName) throws Exception {
         setPreferredSize(new Dimension(512, 512));
         setBackground(Color.black);
+        setIgnoreRepaint(true);
         setFocusable(true);
         addKeyListener(this);
 
         try {
-            networkHandler = new ClientNetworkHandler(ip, port);
+            networkHandler = new ClientNetworkHandler(ip, port, roomOperation, roomName);
             networkHandler.setClient(this);
             renderer = new GameRenderer();
             playerId = networkHandler.getPlayerId();
@@ -34,40 +74,157 @@ public class GameClient extends JPanel implements KeyListener {
         }
     }
 
+    // El bucle de dibujo empieza cuando el Canvas tiene ventana (hace falta para crear el BufferStrategy)
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        if (connectedToServer) {
-            renderer.render(g, networkHandler.getGameObjects(), networkHandler.getScore(playerId), networkHandler.isGameOver());
+    public void addNotify() {
+        super.addNotify();
+        createBufferStrategy(2);
+        running = true;
+        renderThread = new Thread(this::renderLoop, "Render");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
 
+    @Override
+    public void removeNotify() {
+        running = false;
+        if (renderThread != null) {
+            renderThread.interrupt();
+            try {
+                renderThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.removeNotify();
+    }
 
-            boolean playerShipExists = false;
-            for (GameObject obj : networkHandler.getGameObjects()) {
-                if (obj.getType().equals("SHIP") && obj.getPlayerId() == playerId) {
-                    playerShipExists = true;
-                    break;
-                }
+    private void renderLoop() {
+        BufferStrategy strategy = getBufferStrategy();
+        long period = 1_000_000_000L / frameRate();
+        long deadline = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            do {
+                do {
+                    Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+                    try {
+                        drawFrame(g);
+                    } finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+            // Sin esto algunos sistemas de ventanas acumulan frames y los muestran a saltos
+            Toolkit.getDefaultToolkit().sync();
+            recordFrame(start, System.nanoTime());
+
+            deadline += period;
+            long now = System.nanoTime();
+            if (now - deadline > period) {
+                // Frame perdido (ventana oculta, pausa del GC): se retoma el ritmo desde ahora sin ráfagas
+                deadline = now;
+            }
+            while (running && (now = System.nanoTime()) < deadline) {
+                LockSupport.parkNanos(deadline - now);
             }
+        }
+    }
+
+    // Con page flipping show() ya espera al refresco; si no, el bucle se ajusta al ritmo de la pantalla
+    private int frameRate() {
+        if (FRAME_RATE > 0) {
+            return FRAME_RATE;
+        }
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        int refreshRate = config != null ? config.getDevice().getDisplayMode().getRefreshRate()
+                : DisplayMode.REFRESH_RATE_UNKNOWN;
+        return refreshRate > 0 ? refreshRate : DEFAULT_FRAME_RATE;
+    }
 
-            if (!playerShipExists && !networkHandler.isGameOver()) {
+    private void drawFrame(Graphics2D g) {
+        g.setColor(Color.black);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (connectedToServer) {
+            renderer.render(g, interpolatedObjects(), networkHandler.getScore(playerId), networkHandler.isGameOver());
+            if (networkHandler.getOwnShip() == null && networkHandler.hasSpawned() && !networkHandler.isGameOver()) {
                 playerEliminated = true;
                 g.setColor(Color.RED);
-                g.setFont(new Font("Arial", Font.BOLD, 24));
+                g.setFont(TITLE_FONT);
                 g.drawString("¡Has sido eliminado!", 150, 250);
-                g.setFont(new Font("Arial", Font.PLAIN, 16));
+                g.setFont(MESSAGE_FONT);
                 g.drawString("Observando a otros jugadores...", 150, 280);
             }
         } else {
             g.setColor(Color.RED);
-            g.setFont(new Font("Arial", Font.BOLD, 24));
+            g.setFont(TITLE_FONT);
             g.drawString("Desconectado del servidor", 100, 250);
-            g.setFont(new Font("Arial", Font.PLAIN, 16));
+            g.setFont(MESSAGE_FONT);
             g.drawString("Reinicia la aplicación para volver a conectar", 80, 280);
         }
+        if (showHud) {
+            g.setColor(Color.GRAY);
+            g.setFont(HUD_FONT);
+            g.drawString(hudText, getWidth() - 8 - g.getFontMetrics().stringWidth(hudText), 16);
+        }
+    }
+
+    // HUD (F3 lo oculta): FPS reales, tiempo medio y máximo de dibujar y mostrar un frame
+    private void recordFrame(long start, long end) {
+        int index = frameCount % FRAME_SAMPLES;
+        frameTimes[index] = end - start;
+        frameIntervals[index] = lastFrameStart == 0 ? 0 : start - lastFrameStart;
+        lastFrameStart = start;
+        frameCount++;
+        if (end - lastHudUpdate < HUD_UPDATE_NANOS) {
+            return;
+        }
+        lastHudUpdate = end;
+        int samples = Math.min(frameCount, FRAME_SAMPLES);
+        long totalTime = 0;
+        long maxTime = 0;
+        long totalInterval = 0;
+        int intervals = 0;
+        for (int i = 0; i < samples; i++) {
+            totalTime += frameTimes[i];
+            maxTime = Math.max(maxTime, frameTimes[i]);
+            if (frameIntervals[i] > 0) {
+                totalInterval += frameIntervals[i];
+                intervals++;
+            }
+        }
+        double fps = totalInterval > 0 ? 1e9 * intervals / totalInterval : 0;
+        hudText = String.format("%.0f FPS  %.2f ms  máx %.2f ms", fps, totalTime / 1e6 / samples, maxTime / 1e6);
+    }
+
+    private ArrayList<GameObject> interpolatedObjects() {
+        SnapshotBuffer.Frame frame = networkHandler.sampleStates(System.nanoTime() - INTERPOLATION_DELAY_NANOS);
+        if (frame == null) {
+            return networkHandler.getGameObjects();
+        }
+        ArrayList<GameObject> objects = renderer.interpolate(frame.from, frame.to, frame.alpha);
+        GameObject ownShip = networkHandler.getOwnShip();
+        if (ownShip != null) {
+            // La nave propia va adelantada (predicción), no retrasada como el resto
+            ArrayList<GameObject> withOwnShip = new ArrayList<>(objects.size() + 1);
+            for (GameObject obj : objects) {
+                if (obj.getId() != ownShip.getId()) {
+                    withOwnShip.add(obj);
+                }
+            }
+            withOwnShip.add(ownShip);
+            objects = withOwnShip;
+        }
+        return objects;
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
+        if (e.getKeyCode() == KeyEvent.VK_F3) {
+            showHud = !showHud;
+            return;
+        }
         if (!connectedToServer) return;
 
         if (playerEliminated && e.getKeyCode() != KeyEvent.VK_ENTER) {
@@ -82,12 +239,9 @@ public class GameClient extends JPanel implements KeyListener {
             }
         }
 
-        if (e.getKeyCode() == KeyEvent.VK_LEFT) {
-            networkHandler.sendInput("LEFT");
-        } else if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
-            networkHandler.sendInput("RIGHT");
-        } else if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-            networkHandler.sendInput("SHOOT");
+        int input = inputFor(e.getKeyCode());
+        if (input != 0) {
+            networkHandler.setInputHeld(input, true);
         }
     }
 
@@ -95,11 +249,24 @@ public class GameClient extends JPanel implements KeyListener {
     public void keyTyped(KeyEvent e) {}
 
     @Override
-    public void keyReleased(KeyEvent e) {}
+    public void keyReleased(KeyEvent e) {
+        int input = inputFor(e.getKeyCode());
+        if (connectedToServer && input != 0) {
+            networkHandler.setInputHeld(input, false);
+        }
+    }
+
+    private static int inputFor(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_LEFT: return GameState.INPUT_LEFT;
+            case KeyEvent.VK_RIGHT: return GameState.INPUT_RIGHT;
+            case KeyEvent.VK_SPACE: return GameState.INPUT_SHOOT;
+            default: return 0;
+        }
+    }
 
     public void connectionLost() {
         connectedToServer = false;
-        repaint();
         JOptionPane.showMessageDialog(this,
                 "Se ha perdido la conexión con el servidor.\nReinicia la aplicación para volver a conectar.",
                 "Error de Conexión", JOptionPane.ERROR_MESSAGE);
@@ -111,12 +278,20 @@ public class GameClient extends JPanel implements KeyListener {
             if (ip == null || ip.trim().isEmpty()) {
                 System.exit(0);
             }
+            String room = JOptionPane.showInputDialog("Sala (vacío = sala por defecto, * = crear una nueva):", "");
+            if (room == null) {
+                System.exit(0);
+            }
+            room = room.trim();
+            byte roomOperation = room.equals("*") ? Protocol.ROOM_CREATE : Protocol.ROOM_JOIN;
             int port = 12345;
             JFrame frame = new JFrame("Space Invaders Mejorado - Cliente");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             frame.setResizable(false);
             try {
-                GameClient client = new GameClient(ip, port);
+                GameClient client = new GameClient(ip, port, roomOperation,
+                        roomOperation == Protocol.ROOM_CREATE ? "" : room);
+                frame.setTitle("Space Invaders Mejorado - Sala " + client.networkHandler.getRoomName());
                 frame.add(client);
                 frame.pack();
                 frame.setLocationRelativeTo(null);
@@ -0,0 +1,108 @@
+package client;
+import java.util.ArrayList;
+import java.util.Map;
+
+import game.GameObject;
+
+/*
+ * Últimos estados recibidos, cada uno en el instante local (System.nanoTime) que le corresponde. El
+ * cliente dibuja con un retraso fijo e interpola entre los dos estados que rodean ese instante, así el
+ * movimiento es suave aunque el servidor envíe a menos frecuencia o con jitter.
+ * Si el estado trae el tiempo del servidor (su tick), el instante local es ese tiempo más un desfase
+ * suavizado entre los dos relojes: el jitter de la red no mueve los estados y un broadcast perdido
+ * deja su hueco en lugar de estirar el siguiente. Sin tiempo del servidor se usa el de llegada.
+ * El hilo de red publica cada estado sustituyendo un historial inmutable en una referencia volatile;
+ * el hilo de dibujo lo lee en cada frame sin bloqueos y nunca espera a que llegue un paquete.
+ */
+final class SnapshotBuffer {
+    private static final int CAPACITY = 32;
+    private static final Entry[] EMPTY = new Entry[0];
+    // Cada llegada corrige 1/OFFSET_SMOOTHING de la diferencia con el desfase estimado
+    private static final int OFFSET_SMOOTHING = 16;
+    // Con una diferencia mayor (pausa larga, reinicio del reloj del servidor) se vuelve a medir de cero
+    private static final long RESYNC_NANOS = 250_000_000L;
+
+    // Dos estados consecutivos y la fracción recorrida entre ellos (0 = from, 1 = to);
+    // from se entrega indexado por id para emparejar cada entidad de to con su posición anterior
+    static final class Frame {
+        final Map<Integer, GameObject> from;
+        final ArrayList<GameObject> to;
+        final double alpha;
+
+        Frame(Map<Integer, GameObject> from, ArrayList<GameObject> to, double alpha) {
+            this.from = from;
+            this.to = to;
+            this.alpha = alpha;
+        }
+    }
+
+    private static final class Entry {
+        final long time;
+        final ArrayList<GameObject> objects;
+        final Map<Integer, GameObject> byId;
+
+        Entry(long time, ArrayList<GameObject> objects, Map<Integer, GameObject> byId) {
+            this.time = time;
+            this.objects = objects;
+            this.byId = byId;
+        }
+    }
+
+    // Del más reciente al más antiguo; solo lo sustituye el hilo de red (o el de reconexión)
+    private volatile Entry[] history = EMPTY;
+    // Desfase local - servidor y último tiempo del servidor; solo los usa el hilo que añade estados
+    private long offset;
+    private long lastServerTime = -1;
+
+    // serverTime en nanosegundos del reloj del servidor, o -1 si el estado no lo trae
+    void add(long arrival, long serverTime, ArrayList<GameObject> objects, Map<Integer, GameObject> byId) {
+        Entry[] current = history;
+        long time = arrival;
+        if (serverTime >= 0) {
+            long sample = arrival - serverTime;
+            if (lastServerTime < 0 || serverTime < lastServerTime || Math.abs(sample - offset) > RESYNC_NANOS) {
+                offset = sample;
+            } else {
+                offset += (sample - offset) / OFFSET_SMOOTHING;
+            }
+            lastServerTime = serverTime;
+            time = serverTime + offset;
+        }
+        if (current.length > 0 && time <= current[0].time) {
+            // Tras volver a medir el desfase: el historial debe seguir ordenado
+            time = current[0].time + 1;
+        }
+        Entry[] next = new Entry[Math.min(current.length + 1, CAPACITY)];
+        next[0] = new Entry(time, objects, byId);
+        System.arraycopy(current, 0, next, 1, next.length - 1);
+        history = next;
+    }
+
+    void clear() {
+        history = EMPTY;
+        lastServerTime = -1;
+    }
+
+    // Null si aún no se ha recibido ningún estado; sin extrapolar más allá del más reciente
+    Frame sample(long renderTime) {
+        Entry[] entries = history;
+        if (entries.length == 0) {
+            return null;
+        }
+        Entry later = entries[0];
+        for (int i = 1; i < entries.length; i++) {
+            Entry earlier = entries[i];
+            if (earlier.time <= renderTime) {
+                if (renderTime >= later.time) {
+                    return new Frame(later.byId, later.objects, 1);
+                }
+                double alpha = (double) (renderTime - earlier.time) / (later.time - earlier.time);
+                return new Frame(earlier.byId, later.objects, alpha);
+            }
+            later = earlier;
+        }
+        // Más antiguo que todo el historial, o un único estado: se muestra el más cercano
+        Entry closest = entries[0].time <= renderTime ? entries[0] : later;
+        return new Frame(closest.byId, closest.objects, 1);
+    }
+}
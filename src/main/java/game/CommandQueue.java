@@ -0,0 +1,113 @@
+package game;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import metrics.Counter;
+import metrics.Metrics;
+
+/*
+ * Órdenes para una partida desde otros hilos (E/S, conexiones), pendientes del siguiente tick.
+ * Varios productores y un solo consumidor, sin bloqueos: las entradas van en un buffer circular de
+ * enteros (jugador, máscara INPUT_*, secuencia) donde cada productor reserva su hueco con una CAS y
+ * lo publica con su número de secuencia; el hilo del tick las aplica en orden de reserva.
+ * Las altas y bajas de jugadores son raras y no se pueden perder, así que van en una cola enlazada
+ * sin límite (también sin bloqueos). Cada una guarda cuántas entradas se habían reservado al encolarla
+ * y se aplica justo después de ellas: una entrada enviada antes de una baja nunca se aplica después,
+ * aunque el mismo id vuelva a entrar en el mismo tick.
+ */
+final class CommandQueue {
+    // Un cliente que inunda de entradas no puede hacer crecer la cola sin límite
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+    private static final Counter APPLIED = Metrics.counter("spaceinvaders_inputs_total", "Inputs applied by the game loop");
+    private static final Counter DROPPED = Metrics.counter("spaceinvaders_inputs_dropped_total",
+            "Inputs dropped because a room queue was full");
+
+    private final int[] players = new int[CAPACITY];
+    private final int[] inputs = new int[CAPACITY];
+    private final int[] sequences = new int[CAPACITY];
+    // published[i] == n + 1 cuando el hueco i contiene la entrada número n
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private final AtomicLong claimed = new AtomicLong();
+    // Solo lo escribe el consumidor, después de leer los huecos
+    private volatile long consumed;
+
+    private static final class MembershipChange {
+        // Entradas reservadas antes del cambio; se aplica cuando se han consumido todas
+        final long position;
+        // Jugador que entra (playerId) o que sale (~playerId, negativo)
+        final int change;
+
+        MembershipChange(long position, int change) {
+            this.position = position;
+            this.change = change;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<MembershipChange> membership = new ConcurrentLinkedQueue<>();
+
+    boolean offerInput(int playerId, int inputMask, int sequence) {
+        long slot;
+        do {
+            slot = claimed.get();
+            if (slot - consumed >= CAPACITY) {
+                DROPPED.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(slot, slot + 1));
+        int index = (int) (slot & MASK);
+        players[index] = playerId;
+        inputs[index] = inputMask;
+        sequences[index] = sequence;
+        published.set(index, slot + 1);
+        return true;
+    }
+
+    void offerJoin(int playerId) {
+        membership.add(new MembershipChange(claimed.get(), playerId));
+    }
+
+    void offerLeave(int playerId) {
+        membership.add(new MembershipChange(claimed.get(), ~playerId));
+    }
+
+    // Solo desde el hilo del tick; una entrada reservada pero aún sin publicar espera al siguiente tick,
+    // y con ella las altas y bajas encoladas después. Solo se aplican las entradas reservadas al empezar:
+    // las que llegan mientras tanto esperan al siguiente tick, así un cliente que inunda no alarga el tick
+    void drainTo(GameState state) {
+        long next = consumed;
+        long end = claimed.get();
+        long applied = 0;
+        while (true) {
+            applyMembership(state, next);
+            if (next == end) {
+                break;
+            }
+            int index = (int) (next & MASK);
+            if (published.get(index) != next + 1) {
+                break;
+            }
+            int playerId = players[index];
+            int inputMask = inputs[index];
+            int sequence = sequences[index];
+            consumed = ++next;
+            state.applyInput(playerId, inputMask, sequence);
+            applied++;
+        }
+        APPLIED.add(applied);
+    }
+
+    // Altas y bajas encoladas cuando ya estaban reservadas las entradas anteriores a consumed
+    private void applyMembership(GameState state, long position) {
+        MembershipChange next;
+        while ((next = membership.peek()) != null && next.position <= position) {
+            membership.poll();
+            if (next.change >= 0) {
+                state.join(next.change);
+            } else {
+                state.leave(~next.change);
+            }
+        }
+    }
+}
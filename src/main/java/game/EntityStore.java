@@ -0,0 +1,206 @@
+package game;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntSupplier;
+
+/*
+ * Entidades en forma de estructura de arrays: cada campo es un array primitivo indexado por slot.
+ * Los slots liberados se reutilizan (lista libre); los bucles recorren [0, limit()) y
+ * comprueban isOccupied cuando hace falta. GameObject queda como vista (GameStateView.getGameObjects)
+ * para el renderizado y el protocolo antiguo. Cada entidad recibe al crearse un id estable que no
+ * cambia aunque su slot se reutilice después (GameState comparte un contador entre todos sus stores).
+ */
+final class EntityStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    int[] id;
+    int[] x;
+    int[] y;
+    int[] width;
+    int[] height;
+    int[] health;
+    int[] playerId;
+    int[] blockType;
+    byte[] type;
+    byte[] color;
+    double[] velocityX;
+    double[] velocityY;
+    final BitSet occupied = new BitSet();
+    final BitSet alive = new BitSet();
+    final BitSet used = new BitSet();
+
+    private int limit;
+    private int size;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private final IntSupplier ids;
+
+    EntityStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    EntityStore(IntSupplier ids) {
+        this(INITIAL_CAPACITY, ids);
+    }
+
+    // Sin contador compartido: ids propios del store (benchmarks)
+    EntityStore(int capacity) {
+        this(capacity, new IntSupplier() {
+            private int last;
+
+            @Override
+            public int getAsInt() {
+                return ++last;
+            }
+        });
+    }
+
+    EntityStore(int capacity, IntSupplier ids) {
+        this.ids = ids;
+        id = new int[capacity];
+        x = new int[capacity];
+        y = new int[capacity];
+        width = new int[capacity];
+        height = new int[capacity];
+        health = new int[capacity];
+        playerId = new int[capacity];
+        blockType = new int[capacity];
+        type = new byte[capacity];
+        color = new byte[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+    }
+
+    // Mismos valores iniciales que el constructor de GameObject: vivo, sin usar, salud 3
+    int add(int x, int y, int width, int height, byte type, int playerId) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : limit++;
+        if (slot >= this.x.length) {
+            grow();
+        }
+        this.id[slot] = ids.getAsInt();
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.width[slot] = width;
+        this.height[slot] = height;
+        this.type[slot] = type;
+        this.playerId[slot] = playerId;
+        this.health[slot] = 3;
+        this.blockType[slot] = 0;
+        this.color[slot] = EntityTypes.NO_COLOR;
+        this.velocityX[slot] = 0;
+        this.velocityY[slot] = 0;
+        occupied.set(slot);
+        alive.set(slot);
+        used.clear(slot);
+        size++;
+        return slot;
+    }
+
+    // Copia en bloque de las entidades de una plantilla de nivel, en slots seguidos a partir de limit()
+    // (los huecos libres se quedan para después); mismos valores iniciales que add()
+    void addAll(LevelTemplate.Block block) {
+        int count = block.count;
+        int start = limit;
+        while (start + count > x.length) {
+            grow();
+        }
+        System.arraycopy(block.x, 0, x, start, count);
+        System.arraycopy(block.y, 0, y, start, count);
+        System.arraycopy(block.width, 0, width, start, count);
+        System.arraycopy(block.height, 0, height, start, count);
+        System.arraycopy(block.health, 0, health, start, count);
+        System.arraycopy(block.blockType, 0, blockType, start, count);
+        System.arraycopy(block.type, 0, type, start, count);
+        System.arraycopy(block.color, 0, color, start, count);
+        Arrays.fill(playerId, start, start + count, -1);
+        Arrays.fill(velocityX, start, start + count, 0);
+        Arrays.fill(velocityY, start, start + count, 0);
+        for (int slot = start; slot < start + count; slot++) {
+            id[slot] = ids.getAsInt();
+        }
+        occupied.set(start, start + count);
+        alive.set(start, start + count);
+        used.clear(start, start + count);
+        limit += count;
+        size += count;
+    }
+
+    void remove(int slot) {
+        if (!occupied.get(slot)) {
+            return;
+        }
+        occupied.clear(slot);
+        alive.clear(slot);
+        used.clear(slot);
+        size--;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    void clear() {
+        occupied.clear();
+        alive.clear();
+        used.clear();
+        limit = 0;
+        size = 0;
+        freeCount = 0;
+    }
+
+    // Límite superior (exclusivo) de los slots que pueden estar ocupados
+    int limit() {
+        return limit;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean isOccupied(int slot) {
+        return occupied.get(slot);
+    }
+
+    boolean isAlive(int slot) {
+        return alive.get(slot);
+    }
+
+    void setAlive(int slot, boolean value) {
+        alive.set(slot, value);
+    }
+
+    boolean isUsed(int slot) {
+        return used.get(slot);
+    }
+
+    void setUsed(int slot, boolean value) {
+        used.set(slot, value);
+    }
+
+    boolean overlaps(int slot, int otherX, int otherY, int otherWidth, int otherHeight) {
+        return otherX < x[slot] + width[slot] &&
+               otherX + otherWidth > x[slot] &&
+               otherY < y[slot] + height[slot] &&
+               otherY + otherHeight > y[slot];
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        id = Arrays.copyOf(id, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        health = Arrays.copyOf(health, capacity);
+        playerId = Arrays.copyOf(playerId, capacity);
+        blockType = Arrays.copyOf(blockType, capacity);
+        type = Arrays.copyOf(type, capacity);
+        color = Arrays.copyOf(color, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+    }
+}
@@ -0,0 +1,111 @@
+package game;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Tipos de entidad con su código de un byte (el de EntityTypes y del protocolo binario) y lo que cada
+ * tipo hace distinto en la simulación y en el dibujo. GameState, GameRenderer y el cliente consultan
+ * esta tabla por código (fromCode) en lugar de encadenar comparaciones de texto; los nombres
+ * ("ALIEN", "WALL"...) se siguen aceptando con forName para el protocolo serializado y los clientes antiguos.
+ */
+public enum EntityType {
+    // código, bala, jefe, color, puntos, blindado, velocidad, bajada (casillas)
+    SHIP(EntityTypes.SHIP, false, false, false, 0, false, 0, 0),
+    ALIEN(EntityTypes.ALIEN, false, false, true, 100, false, 1, 1),
+    BOSS(EntityTypes.BOSS, false, true, false, 100, false, 1, 0),
+    NEW_ALIEN(EntityTypes.NEW_ALIEN, false, false, true, 100, false, 1, 1),
+    FINAL_BOSS(EntityTypes.FINAL_BOSS, false, true, false, 1000, true, 1.5, 0),
+    FINAL_ALIEN(EntityTypes.FINAL_ALIEN, false, false, true, 100, false, 1, 0.5),
+    BULLET(EntityTypes.BULLET, true, false, false, 0, false, 0, 0),
+    ALIEN_BULLET(EntityTypes.ALIEN_BULLET, true, false, false, 0, false, 0, 0),
+    BOSS_BULLET(EntityTypes.BOSS_BULLET, true, false, false, 0, false, 0, 0),
+    FINAL_BOSS_BULLET(EntityTypes.FINAL_BOSS_BULLET, true, false, false, 0, false, 0, 0),
+    WALL(EntityTypes.WALL, false, false, false, 0, false, 0, 0);
+
+    public static final int COUNT = values().length;
+
+    private static final EntityType[] BY_CODE = new EntityType[COUNT];
+    private static final Map<String, EntityType> BY_NAME = new HashMap<>();
+
+    static {
+        for (EntityType type : values()) {
+            if (BY_CODE[type.code] != null) {
+                throw new ExceptionInInitializerError("Duplicate entity type code " + type.code);
+            }
+            BY_CODE[type.code] = type;
+            BY_NAME.put(type.name(), type);
+        }
+    }
+
+    private final byte code;
+    private final boolean bullet;
+    private final boolean boss;
+    private final boolean colored;
+    private final int points;
+    private final boolean armored;
+    private final double speed;
+    private final double descent;
+
+    EntityType(byte code, boolean bullet, boolean boss, boolean colored, int points, boolean armored,
+               double speed, double descent) {
+        this.code = code;
+        this.bullet = bullet;
+        this.boss = boss;
+        this.colored = colored;
+        this.points = points;
+        this.armored = armored;
+        this.speed = speed;
+        this.descent = descent;
+    }
+
+    public static EntityType fromCode(int code) {
+        return BY_CODE[code];
+    }
+
+    // Null si el nombre no es de ningún tipo
+    public static EntityType forName(String name) {
+        return name == null ? null : BY_NAME.get(name);
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    // Las balas se dejan de ver al usarse, el resto al morir; la nave se ve siempre
+    public boolean isVisible(boolean alive, boolean used) {
+        if (this == SHIP) {
+            return true;
+        }
+        return bullet ? !used : alive;
+    }
+
+    // Jefes: no bajan con la formación ni eliminan naves al llegar abajo
+    public boolean isBoss() {
+        return boss;
+    }
+
+    // El dibujo depende del color de la entidad
+    public boolean isColored() {
+        return colored;
+    }
+
+    // Puntos para el jugador que lo destruye
+    public int points() {
+        return points;
+    }
+
+    // Un impacto le quita vida en lugar de destruirlo
+    public boolean isArmored() {
+        return armored;
+    }
+
+    // Múltiplo de la velocidad horizontal de la formación
+    public double speed() {
+        return speed;
+    }
+
+    // Casillas que baja cuando la formación cambia de dirección
+    public double descent() {
+        return descent;
+    }
+}
@@ -0,0 +1,79 @@
+package game;
+import java.util.HashMap;
+import java.util.Map;
+
+// Códigos de tipo y color de las entidades; también son los códigos del protocolo binario.
+// Lo que hace cada tipo está en EntityType, indexado por estos códigos.
+public final class EntityTypes {
+    public static final byte SHIP = 0;
+    public static final byte ALIEN = 1;
+    public static final byte BOSS = 2;
+    public static final byte NEW_ALIEN = 3;
+    public static final byte FINAL_BOSS = 4;
+    public static final byte FINAL_ALIEN = 5;
+    public static final byte BULLET = 6;
+    public static final byte ALIEN_BULLET = 7;
+    public static final byte BOSS_BULLET = 8;
+    public static final byte FINAL_BOSS_BULLET = 9;
+    public static final byte WALL = 10;
+
+    public static final byte NO_COLOR = 0;
+    public static final byte CYAN = 1;
+    public static final byte MAGENTA = 2;
+    public static final byte YELLOW = 3;
+    public static final byte ORANGE = 4;
+    public static final byte RED = 5;
+    public static final byte PINK = 6;
+    public static final byte WHITE = 7;
+    public static final byte PURPLE = 8;
+
+    // Vida máxima de una entidad: los snapshots binarios la envían en un byte sin signo
+    public static final int MAX_HEALTH = 0xFF;
+
+    private static final String[] COLOR_NAMES = {
+            null, "CYAN", "MAGENTA", "YELLOW", "ORANGE", "RED", "PINK", "WHITE", "PURPLE"
+    };
+    // Incluye null -> NO_COLOR
+    private static final Map<String, Byte> COLOR_CODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < COLOR_NAMES.length; i++) {
+            COLOR_CODES.put(COLOR_NAMES[i], (byte) i);
+        }
+    }
+
+    public static final int TYPE_COUNT = EntityType.COUNT;
+    public static final int COLOR_COUNT = COLOR_NAMES.length;
+
+    private EntityTypes() {}
+
+    public static String typeName(int code) {
+        return EntityType.fromCode(code).name();
+    }
+
+    public static String colorName(int code) {
+        return COLOR_NAMES[code];
+    }
+
+    public static byte typeCode(String type) {
+        EntityType entityType = EntityType.forName(type);
+        if (entityType == null) {
+            throw new IllegalArgumentException("Unknown entity type: " + type);
+        }
+        return entityType.code();
+    }
+
+    public static byte colorCode(String color) {
+        Byte code = COLOR_CODES.get(color);
+        if (code == null) {
+            throw new IllegalArgumentException("Unknown entity color: " + color);
+        }
+        return code;
+    }
+
+    // Para datos recibidos: un color desconocido se dibuja como sin color en lugar de fallar
+    static byte colorCodeOrNone(String color) {
+        Byte code = COLOR_CODES.get(color);
+        return code != null ? code : NO_COLOR;
+    }
+}
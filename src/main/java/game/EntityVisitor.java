@@ -0,0 +1,7 @@
+package game;
+
+// Recibe los campos de cada entidad sin crear un GameObject por ella (ver GameState.forEachEntity)
+public interface EntityVisitor {
+    void visit(int id, int x, int y, int width, int height, byte type, byte color,
+               boolean alive, boolean used, int blockType, int health, int playerId);
+}
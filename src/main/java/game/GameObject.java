@@ -1,4 +1,6 @@
 package game;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 public class GameObject implements Serializable {
@@ -12,6 +14,10 @@ public class GameObject implements Serializable {
     int blockType = 0; // Nuevo campo para definir la forma del bloque (0-3)
     int health;
     private double velocityX, velocityY;
+    private int id; // Id estable asignado por GameState; identifica la entidad entre estados
+    // type y color resueltos a su código una sola vez; no viajan en la serialización (readObject los recalcula)
+    private transient EntityType entityType; // null si el nombre no es de ningún tipo
+    private transient byte colorCode;
 
     public GameObject(int x, int y, int width, int height, String type, int playerId) {
         this.x = x;
@@ -19,11 +25,36 @@ public class GameObject implements Serializable {
         this.width = width;
         this.height = height;
         this.type = type;
+        this.entityType = EntityType.forName(type);
         this.playerId = playerId;
         this.alive = true;
         this.used = false;
         health = 3;
     }
+
+    public GameObject(int x, int y, int width, int height, EntityType type, int playerId) {
+        this(x, y, width, height, type.name(), playerId);
+    }
+
+    // Copia con los códigos ya resueltos (interpolación y predicción del cliente)
+    public GameObject(GameObject other) {
+        this.x = other.x;
+        this.y = other.y;
+        this.width = other.width;
+        this.height = other.height;
+        this.type = other.type;
+        this.entityType = other.entityType;
+        this.alive = other.alive;
+        this.used = other.used;
+        this.playerId = other.playerId;
+        this.color = other.color;
+        this.colorCode = other.colorCode;
+        this.blockType = other.blockType;
+        this.health = other.health;
+        this.velocityX = other.velocityX;
+        this.velocityY = other.velocityY;
+        this.id = other.id;
+    }
     
     public int getX() {
         return x;
@@ -63,6 +94,11 @@ public class GameObject implements Serializable {
     
     public void setType(String type) {
         this.type = type;
+        this.entityType = EntityType.forName(type);
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
     }
     
     public boolean isAlive() {
@@ -95,6 +131,17 @@ public class GameObject implements Serializable {
     
     public void setColor(String color) {
         this.color = color;
+        this.colorCode = EntityTypes.colorCodeOrNone(color);
+    }
+
+    // Código EntityTypes del color (NO_COLOR si no tiene o no se conoce)
+    public byte getColorCode() {
+        return colorCode;
+    }
+
+    public void setColorCode(byte colorCode) {
+        this.color = EntityTypes.colorName(colorCode);
+        this.colorCode = colorCode;
     }
     
     public int getBlockType() {
@@ -121,6 +168,14 @@ public class GameObject implements Serializable {
         this.velocityX = velocityX;
     }
     
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
     public double getVelocityY() {
         return velocityY;
     }
@@ -129,4 +184,9 @@ public class GameObject implements Serializable {
         this.velocityY = velocityY;
     }
 
-}
\ No newline at end of file
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        entityType = EntityType.forName(type);
+        colorCode = EntityTypes.colorCodeOrNone(color);
+    }
+}
@@ -3,38 +3,105 @@ import java.awt.*;
 import java.util.*;
 
 public class GameRenderer {
+    private static final Font SCORE_FONT = new Font("Arial", Font.PLAIN, 32);
+    private static final Color PURPLE = new Color(128, 0, 128);
+    private static final Color BOSS_MAGENTA = new Color(255, 0, 255);
+    private static final Color BOSS_CYAN = new Color(0, 255, 255);
+    private static final Color WHITE_GLOW = new Color(255, 255, 255, 100);
+    private static final Color ORANGE = new Color(255, 165, 0);
+    private static final Color INDIGO = new Color(75, 0, 130);
+    private static final Color RED_GLOW = new Color(255, 0, 0, 100);
+    private static final Color BULLET_ORANGE = new Color(255, 128, 0);
+    private static final Color VIOLET = new Color(138, 43, 226);
+    private static final Color[] WALL_COLORS = {
+            new Color(0.5f, 0.5f, 0.5f, 0.33f),
+            new Color(0.5f, 0.5f, 0.5f, 0.66f),
+            new Color(0.5f, 0.5f, 0.5f, 1.0f)
+    };
+    // Color de relleno de los alienígenas por código EntityTypes; null deja el color que hubiera
+    private static final Color[] ALIEN_COLORS = new Color[EntityTypes.COLOR_COUNT];
+    private static final long NO_SPRITE = -1;
+
+    static {
+        ALIEN_COLORS[EntityTypes.CYAN] = Color.cyan;
+        ALIEN_COLORS[EntityTypes.MAGENTA] = Color.magenta;
+        ALIEN_COLORS[EntityTypes.YELLOW] = Color.yellow;
+        ALIEN_COLORS[EntityTypes.ORANGE] = ORANGE;
+        ALIEN_COLORS[EntityTypes.RED] = Color.RED;
+        ALIEN_COLORS[EntityTypes.PINK] = Color.PINK;
+        ALIEN_COLORS[EntityTypes.WHITE] = Color.WHITE;
+    }
+
+    // Un desplazamiento mayor entre dos estados no es movimiento (teletransporte de los
+    // alienígenas del nivel 3): se dibuja directamente el estado nuevo
+    private static final int MAX_INTERPOLATION_STEP = 64;
+
+    // null si se dibuja cada entidad con primitivas en cada frame (-Dspaceinvaders.spriteCache=false)
+    private final SpriteAtlas atlas;
+    // Función de dibujo de cada tipo, indexada por código EntityTypes
+    private final SpriteAtlas.Painter[] painters = new SpriteAtlas.Painter[EntityType.COUNT];
+
+    public GameRenderer() {
+        this(!"false".equals(System.getProperty("spaceinvaders.spriteCache")));
+    }
+
+    public GameRenderer(boolean spriteCache) {
+        atlas = spriteCache ? new SpriteAtlas(this::paint) : null;
+        painters[EntityTypes.SHIP] = this::drawShip;
+        painters[EntityTypes.ALIEN] = this::drawAlien;
+        painters[EntityTypes.BOSS] = this::drawBoss;
+        painters[EntityTypes.NEW_ALIEN] = this::drawNewAlien;
+        painters[EntityTypes.FINAL_BOSS] = this::drawFinalBoss;
+        painters[EntityTypes.FINAL_ALIEN] = this::drawFinalAlien;
+        painters[EntityTypes.BULLET] = this::drawBullet;
+        painters[EntityTypes.ALIEN_BULLET] = this::drawAlienBullet;
+        painters[EntityTypes.BOSS_BULLET] = this::drawBossBullet;
+        painters[EntityTypes.FINAL_BOSS_BULLET] = this::drawFinalBossBullet;
+        painters[EntityTypes.WALL] = this::drawWall;
+    }
+
+    // Posiciones intermedias entre dos estados consecutivos; alpha = 0 es from y 1 es to.
+    // Cada entidad de to se empareja por id con la de from; las nuevas se dibujan tal cual.
+    public ArrayList<GameObject> interpolate(Map<Integer, GameObject> from, ArrayList<GameObject> to, double alpha) {
+        if (alpha >= 1) {
+            return to;
+        }
+        ArrayList<GameObject> result = new ArrayList<>(to.size());
+        for (GameObject next : to) {
+            GameObject previous = from.get(next.getId());
+            if (previous == null || previous == next ||
+                    Math.abs(next.getX() - previous.getX()) > MAX_INTERPOLATION_STEP ||
+                    Math.abs(next.getY() - previous.getY()) > MAX_INTERPOLATION_STEP) {
+                result.add(next);
+                continue;
+            }
+            GameObject obj = new GameObject(next);
+            obj.setX((int) Math.round(previous.getX() + (next.getX() - previous.getX()) * alpha));
+            obj.setY((int) Math.round(previous.getY() + (next.getY() - previous.getY()) * alpha));
+            result.add(obj);
+        }
+        return result;
+    }
+
     public void render(Graphics g, ArrayList<GameObject> objects, int score, boolean gameOver) {
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
         for (GameObject obj : objects) {
-            if (obj.getType().equals("SHIP")) {
-                drawShip(g2d, obj);
-            } else if (obj.getType().equals("ALIEN") && obj.isAlive()) {
-                drawAlien(g2d, obj);
-            } else if (obj.getType().equals("BOSS") && obj.isAlive()) {
-                drawBoss(g2d, obj);
-            } else if (obj.getType().equals("NEW_ALIEN") && obj.isAlive()) {
-                drawNewAlien(g2d, obj);
-            } else if (obj.getType().equals("FINAL_BOSS") && obj.isAlive()) {
-                drawFinalBoss(g2d, obj);
-            } else if (obj.getType().equals("FINAL_ALIEN") && obj.isAlive()) {
-                drawFinalAlien(g2d, obj);
-            } else if (obj.getType().equals("BULLET") && !obj.isUsed()) {
-                drawBullet(g2d, obj);
-            } else if (obj.getType().equals("ALIEN_BULLET") && !obj.isUsed()) {
-                drawAlienBullet(g2d, obj);
-            } else if (obj.getType().equals("BOSS_BULLET") && !obj.isUsed()) {
-                drawBossBullet(g2d, obj);
-            } else if (obj.getType().equals("FINAL_BOSS_BULLET") && !obj.isUsed()) {
-                drawFinalBossBullet(g2d, obj);
-            } else if (obj.getType().equals("WALL") && obj.isAlive()) {
-                drawWall(g2d, obj);
+            EntityType type = obj.getEntityType();
+            if (type == null || !type.isVisible(obj.isAlive(), obj.isUsed())) {
+                continue;
+            }
+            long key = atlas == null ? NO_SPRITE : spriteKey(obj);
+            if (key == NO_SPRITE) {
+                paint(g2d, obj);
+            } else {
+                atlas.draw(g2d, obj, key);
             }
         }
 
         g2d.setColor(Color.white);
-        g2d.setFont(new Font("Arial", Font.PLAIN, 32));
+        g2d.setFont(SCORE_FONT);
         if (gameOver) {
             g2d.drawString("Game Over: " + score, 10, 35);
         } else {
@@ -42,6 +109,39 @@ public class GameRenderer {
         }
     }
 
+    private void paint(Graphics2D g2d, GameObject obj) {
+        painters[obj.getEntityType().code()].paint(g2d, obj);
+    }
+
+    // Todo lo que cambia el dibujo de una entidad salvo la posición: tipo, color (solo en los
+    // alienígenas que lo usan), forma (ALIEN), vida (WALL) y tamaño
+    private static long spriteKey(GameObject obj) {
+        int width = obj.getWidth();
+        int height = obj.getHeight();
+        if (width <= 0 || height <= 0 || width > 0xFFFF || height > 0xFFFF) {
+            return NO_SPRITE;
+        }
+        EntityType entityType = obj.getEntityType();
+        byte type = entityType.code();
+        byte color = entityType.isColored() ? obj.getColorCode() : EntityTypes.NO_COLOR;
+        int shape = type == EntityTypes.ALIEN ? Math.min(Math.max(obj.getBlockType(), 0), 3) : 0;
+        int health = type == EntityTypes.WALL ? wallLevel(obj.getHealth()) : 0;
+        return (long) type << 40 | (long) color << 36 | (long) shape << 34 | (long) health << 32
+                | (long) width << 16 | height;
+    }
+
+    // Índice en WALL_COLORS: 2 con la vida completa, 1 con dos golpes restantes, 0 con menos
+    private static int wallLevel(int health) {
+        return health == 3 ? 2 : health == 2 ? 1 : 0;
+    }
+
+    private static void setAlienColor(Graphics2D g, GameObject alien) {
+        Color color = ALIEN_COLORS[alien.getColorCode()];
+        if (color != null) {
+            g.setColor(color);
+        }
+    }
+
     private void drawShip(Graphics2D g, GameObject ship) {
         g.setColor(Color.green);
         int[] xPoints = {
@@ -61,9 +161,7 @@ public class GameRenderer {
     }
 
     private void drawAlien(Graphics2D g, GameObject alien) {
-        if (alien.getColor().equals("CYAN")) g.setColor(Color.cyan);
-        else if (alien.getColor().equals("MAGENTA")) g.setColor(Color.magenta);
-        else if (alien.getColor().equals("YELLOW")) g.setColor(Color.yellow);
+        setAlienColor(g, alien);
 
         switch (alien.getBlockType()) {
             case 0:
@@ -119,7 +217,7 @@ public class GameRenderer {
     }
 
     private void drawBoss(Graphics2D g, GameObject boss) {
-        g.setColor(new Color(128, 0, 128));
+        g.setColor(PURPLE);
         int[] xHexagon = {
                 boss.getX() + boss.getWidth() / 2,
                 boss.getX() + boss.getWidth() * 3 / 4,
@@ -137,7 +235,7 @@ public class GameRenderer {
                 boss.getY() + boss.getHeight() / 4
         };
         g.fillPolygon(xHexagon, yHexagon, 6);
-        g.setColor(new Color(255, 0, 255));
+        g.setColor(BOSS_MAGENTA);
         g.fillOval(boss.getX() + boss.getWidth() / 4, boss.getY() + boss.getHeight() / 4,
                 boss.getWidth() / 2, boss.getHeight() / 2);
         g.setColor(Color.BLACK);
@@ -145,12 +243,12 @@ public class GameRenderer {
                 boss.getWidth() / 8, boss.getHeight() / 8);
         g.fillOval(boss.getX() + boss.getWidth() * 5 / 8 - boss.getWidth() / 8, boss.getY() + boss.getHeight() * 3 / 8,
                 boss.getWidth() / 8, boss.getHeight() / 8);
-        g.setColor(new Color(0, 255, 255));
+        g.setColor(BOSS_CYAN);
         g.drawLine(boss.getX() + boss.getWidth() / 4, boss.getY() + boss.getHeight() / 2,
                 boss.getX() + boss.getWidth() * 3 / 4, boss.getY() + boss.getHeight() / 2);
         g.drawLine(boss.getX() + boss.getWidth() / 2, boss.getY() + boss.getHeight() / 4,
                 boss.getX() + boss.getWidth() / 2, boss.getY() + boss.getHeight() * 3 / 4);
-        g.setColor(new Color(128, 0, 128));
+        g.setColor(PURPLE);
         int[] xLeftArm = {
                 boss.getX(),
                 boss.getX() - boss.getWidth() / 4,
@@ -173,16 +271,13 @@ public class GameRenderer {
                 boss.getY() + boss.getHeight() * 5 / 8
         };
         g.fillPolygon(xRightArm, yRightArm, 3);
-        g.setColor(new Color(255, 255, 255, 100));
+        g.setColor(WHITE_GLOW);
         g.fillOval(boss.getX() + boss.getWidth() * 3 / 8, boss.getY() + boss.getHeight() * 3 / 8,
                 boss.getWidth() / 4, boss.getHeight() / 4);
     }
 
     private void drawNewAlien(Graphics2D g, GameObject alien) {
-        if (alien.getColor().equals("CYAN")) g.setColor(Color.cyan);
-        else if (alien.getColor().equals("MAGENTA")) g.setColor(Color.magenta);
-        else if (alien.getColor().equals("YELLOW")) g.setColor(Color.yellow);
-        else if (alien.getColor().equals("ORANGE")) g.setColor(new Color(255, 165, 0));
+        setAlienColor(g, alien);
 
         int[] xStar = {
                 alien.getX() + alien.getWidth() / 2,
@@ -204,13 +299,13 @@ public class GameRenderer {
         g.setColor(Color.BLACK);
         g.fillOval(alien.getX() + alien.getWidth() * 3 / 8, alien.getY() + alien.getHeight() * 3 / 8,
                 alien.getWidth() / 4, alien.getHeight() / 4);
-        g.setColor(new Color(255, 255, 255, 100));
+        g.setColor(WHITE_GLOW);
         g.fillOval(alien.getX() + alien.getWidth() * 7 / 16, alien.getY() + alien.getHeight() * 7 / 16,
                 alien.getWidth() / 8, alien.getHeight() / 8);
     }
 
     private void drawFinalBoss(Graphics2D g, GameObject boss) {
-        g.setColor(new Color(75, 0, 130)); // Indigo
+        g.setColor(INDIGO); // Indigo
         int[] xOctagon = {
                 boss.getX() + boss.getWidth() / 2,
                 boss.getX() + boss.getWidth() * 3 / 4,
@@ -238,7 +333,7 @@ public class GameRenderer {
         g.setColor(Color.WHITE);
         g.fillOval(boss.getX() + boss.getWidth() * 3 / 8, boss.getY() + boss.getHeight() * 3 / 8,
                 boss.getWidth() / 4, boss.getHeight() / 4);
-        g.setColor(new Color(255, 255, 255, 100));
+        g.setColor(WHITE_GLOW);
         int[] xLeftArm = {
                 boss.getX(),
                 boss.getX() - boss.getWidth() / 4,
@@ -264,9 +359,7 @@ public class GameRenderer {
     }
 
     private void drawFinalAlien(Graphics2D g, GameObject alien) {
-        if (alien.getColor().equals("RED")) g.setColor(Color.RED);
-        else if (alien.getColor().equals("PINK")) g.setColor(Color.PINK);
-        else if (alien.getColor().equals("WHITE")) g.setColor(Color.WHITE);
+        setAlienColor(g, alien);
 
         int[] xPentagon = {
                 alien.getX() + alien.getWidth() / 2,
@@ -283,7 +376,7 @@ public class GameRenderer {
                 alien.getY() + alien.getHeight() / 3
         };
         g.fillPolygon(xPentagon, yPentagon, 5);
-        g.setColor(new Color(255, 0, 0, 100));
+        g.setColor(RED_GLOW);
         g.fillOval(alien.getX() + alien.getWidth() / 4, alien.getY() + alien.getHeight() / 4,
                 alien.getWidth() / 2, alien.getHeight() / 2);
     }
@@ -311,13 +404,13 @@ public class GameRenderer {
                 bullet.getY() + bullet.getHeight()/2
         };
         g.fillPolygon(xPoints, yPoints, 4);
-        g.setColor(new Color(255, 128, 0));
+        g.setColor(BULLET_ORANGE);
         g.fillOval(bullet.getX() + bullet.getWidth()/4, bullet.getY() + bullet.getHeight()/4,
                 bullet.getWidth()/2, bullet.getHeight()/2);
     }
 
     private void drawBossBullet(Graphics2D g, GameObject bullet) {
-        g.setColor(new Color(128, 0, 128));
+        g.setColor(PURPLE);
         int[] xPoints = {
                 bullet.getX() + bullet.getWidth()/2,
                 bullet.getX() + bullet.getWidth(),
@@ -331,13 +424,13 @@ public class GameRenderer {
                 bullet.getY() + bullet.getHeight()/2
         };
         g.fillPolygon(xPoints, yPoints, 4);
-        g.setColor(new Color(255, 0, 255));
+        g.setColor(BOSS_MAGENTA);
         g.fillOval(bullet.getX() + bullet.getWidth()/4, bullet.getY() + bullet.getHeight()/4,
                 bullet.getWidth()/2, bullet.getHeight()/2);
     }
 
     private void drawFinalBossBullet(Graphics2D g, GameObject bullet) {
-        g.setColor(new Color(138, 43, 226));
+        g.setColor(VIOLET);
         int[] xPoints = {
                 bullet.getX() + bullet.getWidth()/2,
                 bullet.getX() + bullet.getWidth(),
@@ -357,8 +450,7 @@ public class GameRenderer {
     }
 
     private void drawWall(Graphics2D g, GameObject wall) {
-        float opacity = wall.getHealth() == 3 ? 1.0f : wall.getHealth() == 2 ? 0.66f : 0.33f;
-        g.setColor(new Color(0.5f, 0.5f, 0.5f, opacity)); // Gray with health-based opacity
+        g.setColor(WALL_COLORS[wallLevel(wall.getHealth())]); // Gray with health-based opacity
         g.fillRect(wall.getX(), wall.getY(), wall.getWidth(), wall.getHeight());
         g.setColor(Color.WHITE);
         g.drawRect(wall.getX(), wall.getY(), wall.getWidth(), wall.getHeight()); // White border
@@ -1,552 +1,834 @@
 package game;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.function.IntPredicate;
+
+import logging.Log;
+import logging.LogLimit;
+import metrics.Histogram;
+import metrics.Metrics;
+
+/*
+ * Estado de una partida con un único escritor: solo el hilo del tick lo modifica (update, applyInput,
+ * addPlayer...). Los demás hilos encolan sus órdenes con queueInput, queueAddPlayer y queueRemovePlayer,
+ * que se aplican al principio del siguiente update, y leen la última GameStateView publicada.
+ * Ni las entradas ni las lecturas esperan nunca a la simulación.
+ */
 public class GameState {
-    private static final int TILE_SIZE = 16;
+    static final int TILE_SIZE = 16;
     private static final int ROWS = 32;
     private static final int COLUMNS = 32;
     private int boardWidth = TILE_SIZE * COLUMNS;
     private int boardHeight = TILE_SIZE * ROWS;
 
-    private Map<Integer, GameObject> ships = new ConcurrentHashMap<>();
-    private Map<Integer, Boolean> activePlayerStatus = new ConcurrentHashMap<>();
-    private List<GameObject> alienBlocks = Collections.synchronizedList(new ArrayList<>());
-    private List<GameObject> bullets = Collections.synchronizedList(new ArrayList<>());
-    private List<GameObject> alienBullets = Collections.synchronizedList(new ArrayList<>());
-    private List<GameObject> walls = Collections.synchronizedList(new ArrayList<>());
+    // Entradas de un jugador como máscara de bits (el bit i es el código i de Protocol.INPUTS)
+    public static final int INPUT_LEFT = 1;
+    public static final int INPUT_RIGHT = 1 << 1;
+    public static final int INPUT_SHOOT = 1 << 2;
+    public static final int INPUT_RESTART = 1 << 3;
+
+    // Movimientos, disparos e impactos van a DEBUG y con límite; solo se registran con -Dspaceinvaders.logLevel=DEBUG
+    private static final LogLimit INPUT_LOG = LogLimit.perSecond(20);
+    private static final LogLimit HIT_LOG = LogLimit.perSecond(20);
+    private static final LogLimit WALL_LOG = LogLimit.perSecond(10);
+
+    // Duración de cada fase de update(), sumada para todas las salas del proceso
+    private static final String PHASE_METRIC = "spaceinvaders_update_phase_seconds";
+    private static final String PHASE_HELP = "Duration of each GameState.update() phase";
+    private static final Histogram MOVEMENT_TIME = Metrics.timer(PHASE_METRIC, PHASE_HELP, "phase", "movement");
+    private static final Histogram SHOOTING_TIME = Metrics.timer(PHASE_METRIC, PHASE_HELP, "phase", "shooting");
+    private static final Histogram COLLISION_TIME = Metrics.timer(PHASE_METRIC, PHASE_HELP, "phase", "bullet_collision");
+    private static final Histogram LEVEL_TIME = Metrics.timer(PHASE_METRIC, PHASE_HELP, "phase", "level_transition");
+
+    // Parámetros de FNV-1a de 64 bits para stateHash()
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Grupos de entidades en el orden de getEntityCounts()
+    public static final String[] ENTITY_GROUPS = { "ship", "alien", "bullet", "alien_bullet", "wall" };
+
+    // Entidades en arrays paralelos (EntityStore); GameObject solo se crea en getGameObjects()
+    private final EntityStore ships = new EntityStore(this::nextEntityId);
+    // Por playerId: slot de su nave (-1 si no tiene), presencia, nave activa y puntuación
+    private int[] shipSlots = new int[0];
+    private final BitSet players = new BitSet();
+    private final BitSet activePlayers = new BitSet();
+    private int[] scores = new int[0];
+    private final BitSet scoredPlayers = new BitSet();
+    // Última entrada numerada aplicada de cada jugador; el cliente la usa para reconciliar su predicción
+    private int[] inputSequences = new int[0];
+    private final EntityStore aliens = new EntityStore(this::nextEntityId);
+    private final EntityStore bullets = new EntityStore(this::nextEntityId);
+    private final EntityStore alienBullets = new EntityStore(this::nextEntityId);
+    private final EntityStore walls = new EntityStore(this::nextEntityId);
     private int alienVelocityX = 1;
     private int alienCount = 0;
-    private Map<Integer, Integer> playerScores = new ConcurrentHashMap<>();
     private boolean gameOver = false;
     private boolean allPlayersEliminated = false;
     private boolean gameHasStarted = false;
-    private Random random = new Random();
+    private final long seed;
+    private final SplittableRandom random;
     private long lastAlienShotTime = 0;
     private long lastBossShotTime = 0;
-    private long lastFinalAlienShotTime = 0;
     private long lastTeleportTime = 0;
-    private int alienShotInterval = 1500;
-    private int bossShotInterval = 1000;
-    private int finalAlienShotInterval = 1200;
-    private int teleportInterval = 5000;
-    private int currentLevel = 1;
-    private final Object gameStateLock = new Object();
+    // Parte del nivel y se ajusta con los alienígenas restantes si el nivel es adaptativo
+    private int alienShotInterval;
+    // Niveles de esta partida: los de Levels.current() al empezar el tick, o fijos al reproducir una grabación
+    private Levels levels;
+    private final boolean fixedLevels;
+    // Plantilla del nivel en curso (Levels): formaciones, disparos, teletransporte y bonificación
+    private LevelTemplate level;
+    // Último id de entidad asignado; crece siempre, también entre partidas, para que no se repitan
+    private int lastEntityId = 0;
+    // Órdenes de otros hilos pendientes del siguiente tick y último estado publicado para los lectores
+    private final CommandQueue commands = new CommandQueue();
+    private volatile GameStateView published;
+    // Registro de entradas para reproducir la partida (InputLog); null si no se graba
+    private Recorder recorder;
+    // Tick en el que se aplican las órdenes que llegan ahora: el actual dentro de update, si no el siguiente
+    private long recordTick;
+    // Duración del último tick en microsegundos (0 antes del primero); con recordTick da el tiempo del servidor
+    private int tickMicros;
+    private final EntityStore[] groups = { ships, aliens, bullets, alienBullets, walls };
+    // Índices por celdas del tablero para las colisiones; las balas son las que consultan
+    private final SpatialGrid alienGrid = new SpatialGrid(aliens, TILE_SIZE, COLUMNS, ROWS);
+    private final SpatialGrid wallGrid = new SpatialGrid(walls, TILE_SIZE, COLUMNS, ROWS);
+    private final SpatialGrid shipGrid = new SpatialGrid(ships, TILE_SIZE, COLUMNS, ROWS);
+    private final IntPredicate isAliveAlien = aliens::isAlive;
+    private final IntPredicate isAliveWall = walls::isAlive;
+    private final IntPredicate isActiveShip = slot -> activePlayers.get(ships.playerId[slot]);
+    // Memoria de trabajo de alienShoot, reutilizada en cada disparo
+    private final int[] frontLine = new int[COLUMNS];
+    private final int[] shooters = new int[COLUMNS];
+
+    // Lo que hace falta para repetir una partida: altas, bajas y entradas en el tick en que se aplicaron,
+    // los niveles recargados desde el tick en que se usan y el hash del estado al final de cada tick.
+    // Solo lo llama el hilo del tick
+    public interface Recorder {
+        // definition: el texto de levels.json que la partida usa desde este tick
+        void levels(long tick, String definition);
+
+        void join(long tick, int playerId);
+
+        void leave(long tick, int playerId);
+
+        void input(long tick, int playerId, int inputs, int sequence);
+
+        void endTick(long tick, long stateHash);
+    }
 
     public GameState() {
-        createAliens();
+        this(new SplittableRandom().nextLong());
+    }
+
+    // Con la misma semilla, los mismos niveles y las mismas órdenes en los mismos ticks, el estado es
+    // idéntico tick a tick: todos los temporizadores usan el reloj simulado y el único azar sale de aquí
+    public GameState(long seed) {
+        this(seed, null);
     }
 
+    // levels != null: la partida usa siempre esos niveles y no sigue las recargas (Replay los cambia con useLevels)
+    GameState(long seed, Levels levels) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+        this.fixedLevels = levels != null;
+        this.levels = fixedLevels ? levels : Levels.current();
+        startLevel(1);
+        publish();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    Levels getLevels() {
+        return levels;
+    }
+
+    void useLevels(Levels levels) {
+        this.levels = levels;
+    }
+
+    // Solo desde el hilo del tick (o antes del primer update)
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Desde cualquier hilo: se aplican al principio del siguiente update, en orden de llegada
+    public void queueInput(int playerId, int inputs, int sequence) {
+        commands.offerInput(playerId, inputs, sequence);
+    }
+
+    public void queueAddPlayer(int playerId) {
+        commands.offerJoin(playerId);
+    }
+
+    public void queueRemovePlayer(int playerId) {
+        commands.offerLeave(playerId);
+    }
+
+    // Los métodos que modifican el estado directamente (addPlayer, removePlayer, handleInput, applyInput,
+    // update) solo se pueden llamar desde el hilo que posee la partida
     public void addPlayer(int playerId) {
-        synchronized(gameStateLock) {
-            int shipX = TILE_SIZE * 2 + (playerId * TILE_SIZE * 6);
-            shipX = Math.max(TILE_SIZE, Math.min(shipX, boardWidth - TILE_SIZE * 3));
-            GameObject ship = new GameObject(shipX, boardHeight - TILE_SIZE * 2,
-                    TILE_SIZE * 2, TILE_SIZE, "SHIP", playerId);
-            ships.put(playerId, ship);
-            activePlayerStatus.put(playerId, true);
-            playerScores.putIfAbsent(playerId, 0);
-
-            if (allPlayersEliminated && gameHasStarted) {
-                resetGame();
-            }
+        join(playerId);
+        publish();
+    }
 
-            if (!gameHasStarted) {
-                gameHasStarted = true;
-                allPlayersEliminated = false;
-                gameOver = false;
-            }
+    public void removePlayer(int playerId) {
+        leave(playerId);
+        publish();
+    }
 
-            System.out.println("Jugador " + playerId + " añadido en la posición: " + shipX);
+    void join(int playerId) {
+        if (recorder != null) {
+            recorder.join(recordTick, playerId);
         }
+        spawnPlayer(playerId);
     }
 
-    public void removePlayer(int playerId) {
-        synchronized(gameStateLock) {
-            ships.remove(playerId);
-            activePlayerStatus.remove(playerId);
-            playerScores.remove(playerId);
-            System.out.println("Jugador " + playerId + " eliminado del estado del juego");
+    private void spawnPlayer(int playerId) {
+        int shipX = TILE_SIZE * 2 + (playerId * TILE_SIZE * 6);
+        shipX = Math.max(TILE_SIZE, Math.min(shipX, boardWidth - TILE_SIZE * 3));
+        removeShip(playerId);
+        int ship = ships.add(shipX, boardHeight - TILE_SIZE * 2,
+                TILE_SIZE * 2, TILE_SIZE, EntityTypes.SHIP, playerId);
+        ensurePlayerCapacity(playerId);
+        shipSlots[playerId] = ship;
+        shipGrid.add(ship);
+        players.set(playerId);
+        activePlayers.set(playerId);
+        if (!scoredPlayers.get(playerId)) {
+            scores[playerId] = 0;
+            scoredPlayers.set(playerId);
+        }
 
-            checkAllPlayersEliminated();
+        if (allPlayersEliminated && gameHasStarted) {
+            resetGame();
+        }
+
+        if (!gameHasStarted) {
+            gameHasStarted = true;
+            allPlayersEliminated = false;
+            gameOver = false;
+        }
+
+        Log.info("Jugador añadido").with("jugador", playerId).with("x", shipX).log();
+    }
+
+    void leave(int playerId) {
+        if (recorder != null) {
+            recorder.leave(recordTick, playerId);
+        }
+        removeShip(playerId);
+        players.clear(playerId);
+        activePlayers.clear(playerId);
+        scoredPlayers.clear(playerId);
+        if (playerId >= 0 && playerId < inputSequences.length) {
+            inputSequences[playerId] = 0;
+        }
+        Log.info("Jugador eliminado del estado del juego").with("jugador", playerId).log();
+
+        checkAllPlayersEliminated();
+    }
+
+    private void removeShip(int playerId) {
+        int ship = shipSlot(playerId);
+        if (ship >= 0) {
+            shipSlots[playerId] = -1;
+            shipGrid.remove(ship);
+            ships.remove(ship);
+        }
+    }
+
+    private int shipSlot(int playerId) {
+        return playerId >= 0 && playerId < shipSlots.length ? shipSlots[playerId] : -1;
+    }
+
+    private void ensurePlayerCapacity(int playerId) {
+        if (playerId >= shipSlots.length) {
+            int capacity = Math.max(8, Math.max(playerId + 1, shipSlots.length * 2));
+            int previous = shipSlots.length;
+            shipSlots = Arrays.copyOf(shipSlots, capacity);
+            Arrays.fill(shipSlots, previous, capacity, -1);
+            scores = Arrays.copyOf(scores, capacity);
+            inputSequences = Arrays.copyOf(inputSequences, capacity);
+        }
+    }
+
+    private void addScore(int playerId, int points) {
+        if (playerId < 0) {
+            return;
+        }
+        ensurePlayerCapacity(playerId);
+        scores[playerId] = scoredPlayers.get(playerId) ? scores[playerId] + points : points;
+        scoredPlayers.set(playerId);
+    }
+
+    private void addScoreToAll(int points) {
+        for (int p = scoredPlayers.nextSetBit(0); p >= 0; p = scoredPlayers.nextSetBit(p + 1)) {
+            scores[p] += points;
         }
     }
 
     private void checkAllPlayersEliminated() {
-        if (gameHasStarted && (ships.isEmpty() || !activePlayerStatus.containsValue(true))) {
+        if (gameHasStarted && (ships.isEmpty() || activePlayers.isEmpty())) {
             allPlayersEliminated = true;
             gameOver = true;
-            System.out.println("¡Todos los jugadores han sido eliminados. Fin del juego!");
+            Log.info("Todos los jugadores han sido eliminados, fin del juego").log();
         }
     }
 
+    // Regla de movimiento de la nave, compartida con la predicción del cliente
+    public static int moveShip(int x, int width, int inputs) {
+        if ((inputs & INPUT_LEFT) != 0 && x - TILE_SIZE/2 >= 0) {
+            x -= TILE_SIZE/2;
+        }
+        if ((inputs & INPUT_RIGHT) != 0 && x + width + TILE_SIZE/2 <= TILE_SIZE * COLUMNS) {
+            x += TILE_SIZE/2;
+        }
+        return x;
+    }
+
     private void eliminatePlayer(int playerId) {
-        if (activePlayerStatus.containsKey(playerId)) {
-            activePlayerStatus.put(playerId, false);
-            System.out.println("¡Jugador " + playerId + " ha sido eliminado!");
+        if (players.get(playerId)) {
+            activePlayers.clear(playerId);
+            Log.info("Jugador eliminado").with("jugador", playerId).log();
             checkAllPlayersEliminated();
         }
     }
 
     public void handleInput(int playerId, String input) {
-        synchronized(gameStateLock) {
-            if (allPlayersEliminated) {
-                if (input.equals("RESTART")) {
-                    resetGame();
-                }
-                return;
-            }
+        handleInput(playerId, input, 0);
+    }
 
-            if (!activePlayerStatus.containsKey(playerId) || !activePlayerStatus.get(playerId)) {
-                System.out.println("Jugador " + playerId + " no está activo. Entrada ignorada.");
-                return;
-            }
+    public void handleInput(int playerId, String input, int sequence) {
+        applyInput(playerId, inputBit(input), sequence);
+    }
 
-            GameObject ship = ships.get(playerId);
-            if (ship == null) {
-                System.out.println("Nave no encontrada para el jugador: " + playerId);
-                return;
-            }
+    // inputs: combinación de INPUT_*; se aplican en el orden izquierda, derecha, disparo.
+    // sequence > 0: número de la entrada en el cliente, se devuelve en los snapshots (getInputSequences).
+    // Los lectores ven el resultado cuando el siguiente update publica el estado
+    public void applyInput(int playerId, int inputs, int sequence) {
+        if (recorder != null) {
+            recorder.input(recordTick, playerId, inputs, sequence);
+        }
+        if (sequence > 0 && playerId >= 0 && players.get(playerId)) {
+            inputSequences[playerId] = sequence;
+        }
 
-            if (input.equals("LEFT") && ship.getX() - TILE_SIZE/2 >= 0) {
-                ship.setX(ship.getX() - TILE_SIZE/2);
-                System.out.println("Jugador " + playerId + " se movió a la IZQUIERDA a: " + ship.getX());
-            } else if (input.equals("RIGHT") && ship.getX() + ship.getWidth() + TILE_SIZE/2 <= boardWidth) {
-                ship.setX(ship.getX() + TILE_SIZE/2);
-                System.out.println("Jugador " + playerId + " se movió a la DERECHA a: " + ship.getX());
-            } else if (input.equals("SHOOT")) {
-                int bulletX = ship.getX() + (ship.getWidth() / 2) - (TILE_SIZE / 16);
-                GameObject bullet = new GameObject(bulletX, ship.getY(),
-                        TILE_SIZE / 8, TILE_SIZE / 2, "BULLET", playerId);
-                bullets.add(bullet);
-                System.out.println("Jugador " + playerId + " DISPARÓ desde la posición: " + ship.getX());
+        if (allPlayersEliminated) {
+            if ((inputs & INPUT_RESTART) != 0) {
+                resetGame();
             }
+            return;
+        }
+
+        if (!activePlayers.get(playerId)) {
+            Log.debug(INPUT_LOG, "Entrada ignorada, jugador no activo").with("jugador", playerId).log();
+            return;
+        }
+
+        int ship = shipSlot(playerId);
+        if (ship < 0) {
+            Log.warn(INPUT_LOG, "Nave no encontrada").with("jugador", playerId).log();
+            return;
+        }
+
+        int shipX = ships.x[ship];
+        int movedX = moveShip(shipX, ships.width[ship], inputs);
+        if (movedX != shipX) {
+            ships.x[ship] = movedX;
+            shipGrid.update(ship);
+            Log.debug(INPUT_LOG, "Jugador se movió").with("jugador", playerId)
+                    .with("dir", movedX < shipX ? "IZQUIERDA" : "DERECHA").with("x", movedX).log();
+        }
+        if ((inputs & INPUT_SHOOT) != 0) {
+            int bulletX = movedX + (ships.width[ship] / 2) - (TILE_SIZE / 16);
+            bullets.add(bulletX, ships.y[ship], TILE_SIZE / 8, TILE_SIZE / 2, EntityTypes.BULLET, playerId);
+            Log.debug(INPUT_LOG, "Jugador disparó").with("jugador", playerId).with("x", movedX).log();
         }
     }
 
-    public void update() {
-        synchronized(gameStateLock) {
-            if (!gameHasStarted) {
-                return;
+    // Bit INPUT_* de una entrada por nombre ("LEFT", "RIGHT", "SHOOT", "RESTART"); 0 si no se reconoce
+    public static int inputBit(String input) {
+        switch (input == null ? "" : input) {
+            case "LEFT": return INPUT_LEFT;
+            case "RIGHT": return INPUT_RIGHT;
+            case "SHOOT": return INPUT_SHOOT;
+            case "RESTART": return INPUT_RESTART;
+            default: return 0;
+        }
+    }
+
+    // tick y dt los fija el bucle de paso fijo; los temporizadores usan este reloj simulado
+    public void update(long tick, double dt) {
+        update(tick, dt, true);
+    }
+
+    // publish = false: los lectores siguen viendo la vista anterior hasta el siguiente publish()
+    public void update(long tick, double dt, boolean publish) {
+        recordTick = tick;
+        tickMicros = (int) Math.round(dt * 1_000_000);
+        // Una recarga de levels.json se aplica siempre al principio de un tick, así queda en la grabación
+        if (!fixedLevels && levels != Levels.current()) {
+            levels = Levels.current();
+            if (recorder != null) {
+                recorder.levels(tick, levels.text());
             }
+        }
+        commands.drainTo(this);
+        simulate(tick, dt);
+        if (recorder != null) {
+            recorder.endTick(tick, stateHash());
+        }
+        recordTick = tick + 1;
+        if (publish) {
+            publish();
+        }
+    }
 
-            if ((ships.isEmpty() || !activePlayerStatus.containsValue(true)) && !allPlayersEliminated) {
-                checkAllPlayersEliminated();
-                return;
+    // Hash de todo el estado que influye en los ticks siguientes (entidades con sus slots, jugadores,
+    // puntuaciones, nivel y temporizadores). Dos partidas con el mismo hash en cada tick no han divergido
+    public long stateHash() {
+        long hash = FNV_OFFSET;
+        for (EntityStore store : groups) {
+            for (int i = store.occupied.nextSetBit(0); i >= 0; i = store.occupied.nextSetBit(i + 1)) {
+                hash = mix(hash, i);
+                hash = mix(hash, store.id[i]);
+                hash = mix(hash, ((long) store.x[i] << 32) | (store.y[i] & 0xFFFFFFFFL));
+                hash = mix(hash, ((long) store.width[i] << 32) | (store.height[i] & 0xFFFFFFFFL));
+                hash = mix(hash, ((long) store.health[i] << 32) | (store.playerId[i] & 0xFFFFFFFFL));
+                hash = mix(hash, ((long) store.blockType[i] << 16) | ((store.type[i] & 0xFF) << 8) | (store.color[i] & 0xFF));
+                hash = mix(hash, Double.doubleToLongBits(store.velocityX[i]));
+                hash = mix(hash, Double.doubleToLongBits(store.velocityY[i]));
+                hash = mix(hash, (store.alive.get(i) ? 1 : 0) | (store.used.get(i) ? 2 : 0));
             }
+            hash = mix(hash, -1);
+        }
+        for (int p = players.nextSetBit(0); p >= 0; p = players.nextSetBit(p + 1)) {
+            hash = mix(hash, ((long) p << 32) | (shipSlots[p] & 0xFFFFFFFFL));
+            hash = mix(hash, ((long) inputSequences[p] << 1) | (activePlayers.get(p) ? 1 : 0));
+        }
+        for (int p = scoredPlayers.nextSetBit(0); p >= 0; p = scoredPlayers.nextSetBit(p + 1)) {
+            hash = mix(hash, ((long) p << 32) | (scores[p] & 0xFFFFFFFFL));
+        }
+        hash = mix(hash, ((long) level.number << 32) | (lastEntityId & 0xFFFFFFFFL));
+        hash = mix(hash, ((long) alienVelocityX << 32) | (alienCount & 0xFFFFFFFFL));
+        hash = mix(hash, ((long) alienShotInterval << 3) | (gameOver ? 4 : 0) | (allPlayersEliminated ? 2 : 0)
+                | (gameHasStarted ? 1 : 0));
+        hash = mix(hash, lastAlienShotTime);
+        hash = mix(hash, lastBossShotTime);
+        return mix(hash, lastTeleportTime);
+    }
 
-            if (allPlayersEliminated) return;
+    // FNV-1a sobre los 8 bytes de value
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ (value & 0xFF)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
 
-            boolean changeDirection = false;
-            for (GameObject alien : alienBlocks) {
-                if (alien.isAlive()) {
-                    if (alien.getType().equals("FINAL_BOSS")) {
-                        alien.setX((int)(alien.getX() + alienVelocityX * 1.5));
-                    } else {
-                        alien.setX(alien.getX() + alienVelocityX);
-                    }
-                    if (alien.getX() + alien.getWidth() >= boardWidth || alien.getX() <= 0) {
-                        changeDirection = true;
-                    }
-                    for (Map.Entry<Integer, GameObject> entry : ships.entrySet()) {
-                        int playerId = entry.getKey();
-                        GameObject ship = entry.getValue();
-                        if (activePlayerStatus.getOrDefault(playerId, false) &&
-                            !alien.getType().equals("BOSS") && !alien.getType().equals("FINAL_BOSS") &&
-                            alien.getY() + alien.getHeight() >= ship.getY()) {
-                            eliminatePlayer(playerId);
-                            ship.setAlive(false);
-                            System.out.println("¡Fin del juego para el jugador " + playerId + "! Los alienígenas alcanzaron la nave!");
-                        }
-                    }
+    private void simulate(long tick, double dt) {
+        if (!gameHasStarted) {
+            return;
+        }
+
+        if ((ships.isEmpty() || activePlayers.isEmpty()) && !allPlayersEliminated) {
+            checkAllPlayersEliminated();
+            return;
+        }
+
+        if (allPlayersEliminated) return;
+
+        long phaseStart = System.nanoTime();
+        moveAliens();
+
+        long currentTime = Math.round(tick * dt * 1000);
+        if (level.teleportInterval > 0 && currentTime - lastTeleportTime > level.teleportInterval) {
+            for (int i = aliens.alive.nextSetBit(0); i >= 0; i = aliens.alive.nextSetBit(i + 1)) {
+                if (EntityType.fromCode(aliens.type[i]).isBoss()) {
+                    aliens.x[i] = random.nextInt(boardWidth - aliens.width[i] + 1);
+                    alienGrid.update(i);
+                    lastTeleportTime = currentTime;
+                    Log.debug("Jefe final teletransportado").with("x", aliens.x[i]).log();
+                    break;
                 }
             }
+        }
 
-            if (changeDirection) {
-                alienVelocityX *= -1;
-                for (GameObject alien : alienBlocks) {
-                    if (alien.isAlive() && !alien.getType().equals("BOSS") && !alien.getType().equals("FINAL_BOSS")) {
-                        alien.setY(alien.getY() + (alien.getType().equals("FINAL_ALIEN") ? TILE_SIZE / 2 : TILE_SIZE));
-                    }
+        long phaseEnd = System.nanoTime();
+        MOVEMENT_TIME.record(phaseEnd - phaseStart);
+        phaseStart = phaseEnd;
+
+        if (currentTime - lastAlienShotTime > alienShotInterval) {
+            if (random.nextInt(100) < level.alienShotChance) {
+                alienShoot(false);
+                if (level.adaptiveShotInterval) {
+                    alienShotInterval = Math.max(800, 2000 - (1000 - alienCount * 3));
                 }
             }
+            lastAlienShotTime = currentTime;
+        }
 
-            long currentTime = System.currentTimeMillis();
-            if (currentLevel == 3 && currentTime - lastTeleportTime > teleportInterval) {
-                for (GameObject alien : alienBlocks) {
-                    if (alien.isAlive() && alien.getType().equals("FINAL_BOSS")) {
-                        alien.setX(random.nextInt(boardWidth - alien.getWidth() + 1));
-                        lastTeleportTime = currentTime;
-                        System.out.println("Jefe final teletransportado a x: " + alien.getX());
-                        break;
-                    }
-                }
+        if (currentTime - lastBossShotTime > level.bossShotInterval) {
+            if (random.nextInt(100) < level.bossShotChance) {
+                alienShoot(true);
             }
+            lastBossShotTime = currentTime;
+        }
 
-            if (currentTime - lastAlienShotTime > alienShotInterval && currentLevel != 3) {
-                if (random.nextInt(100) < 40) {
-                    alienShoot(false);
-                    lastAlienShotTime = currentTime;
-                    alienShotInterval = Math.max(800, 2000 - (1000 - alienCount * 3));
-                } else {
-                    lastAlienShotTime = currentTime;
-                }
+        phaseEnd = System.nanoTime();
+        SHOOTING_TIME.record(phaseEnd - phaseStart);
+        phaseStart = phaseEnd;
+
+        updateBullets();
+        updateAlienBullets();
+        phaseEnd = System.nanoTime();
+        COLLISION_TIME.record(phaseEnd - phaseStart);
+        phaseStart = phaseEnd;
+
+        if (alienCount == 0) {
+            addScoreToAll(level.levelBonus);
+            Log.info("Nivel completado").with("nivel", level.number).with("bonificacion", level.levelBonus).log();
+            bullets.clear();
+            alienBullets.clear();
+            if (level.number < levels.count()) {
+                startLevel(level.number + 1);
+            } else {
+                startLevel(1);
+                addScoreToAll(levels.completionBonus());
+                Log.info("Juego completado").with("bonificacion", levels.completionBonus()).log();
             }
+            LEVEL_TIME.record(System.nanoTime() - phaseStart);
+        }
 
-            if (currentTime - lastFinalAlienShotTime > finalAlienShotInterval && currentLevel == 3) {
-                if (random.nextInt(100) < 50) {
-                    alienShoot(false);
-                    lastFinalAlienShotTime = currentTime;
-                } else {
-                    lastFinalAlienShotTime = currentTime;
-                }
+        for (int ship = ships.occupied.nextSetBit(0); ship >= 0; ship = ships.occupied.nextSetBit(ship + 1)) {
+            if (!ships.isAlive(ship)) {
+                removeShip(ships.playerId[ship]);
             }
+        }
+    }
 
-            if (currentTime - lastBossShotTime > bossShotInterval) {
-                if (random.nextInt(100) < (currentLevel == 3 ? 25 : 20)) {
-                    alienShoot(true);
-                    lastBossShotTime = currentTime;
-                } else {
-                    lastBossShotTime = currentTime;
-                }
+    private void moveAliens() {
+        int[] x = aliens.x;
+        int[] y = aliens.y;
+        int[] width = aliens.width;
+        int[] height = aliens.height;
+        byte[] type = aliens.type;
+        boolean changeDirection = false;
+        // Borde inferior del alienígena (no jefe) más bajo: basta compararlo una vez con cada nave
+        int lowestAlienBottom = Integer.MIN_VALUE;
+        for (int i = aliens.alive.nextSetBit(0); i >= 0; i = aliens.alive.nextSetBit(i + 1)) {
+            EntityType alienType = EntityType.fromCode(type[i]);
+            x[i] = (int)(x[i] + alienVelocityX * alienType.speed());
+            alienGrid.update(i);
+            if (x[i] + width[i] >= boardWidth || x[i] <= 0) {
+                changeDirection = true;
+            }
+            if (!alienType.isBoss()) {
+                lowestAlienBottom = Math.max(lowestAlienBottom, y[i] + height[i]);
             }
+        }
+        for (int ship = ships.occupied.nextSetBit(0); ship >= 0; ship = ships.occupied.nextSetBit(ship + 1)) {
+            int playerId = ships.playerId[ship];
+            if (activePlayers.get(playerId) && lowestAlienBottom >= ships.y[ship]) {
+                eliminatePlayer(playerId);
+                ships.setAlive(ship, false);
+                Log.info("Los alienígenas alcanzaron la nave").with("jugador", playerId).log();
+            }
+        }
 
-            Iterator<GameObject> bulletIter = bullets.iterator();
-            while (bulletIter.hasNext()) {
-                GameObject bullet = bulletIter.next();
-                bullet.setY(bullet.getY() - 10);
-                for (GameObject alien : alienBlocks) {
-                    if (!bullet.isUsed() && alien.isAlive() && detectCollision(bullet, alien)) {
-                        bullet.setUsed(true);
-                        if (alien.getType().equals("FINAL_BOSS")) {
-                            alien.setHealth(alien.getHealth() - 1);
-                            if (alien.getHealth() <= 0) {
-                                alien.setAlive(false);
-                                alienCount--;
-                            }
-                        } else {
-                            alien.setAlive(false);
-                            alienCount--;
-                        }
-                        int playerId = bullet.getPlayerId();
-                        int points = alien.getType().equals("FINAL_BOSS") ? 1000 : 100;
-                        playerScores.compute(playerId, (k, v) -> v == null ? points : v + points);
-                        System.out.println("Bloque alienígena alcanzado por el jugador " + playerId + "! Puntuación: " + playerScores.get(playerId) + ", Bloques alienígenas restantes: " + alienCount);
-                        break;
-                    }
-                }
-                for (GameObject wall : walls) {
-                    if (!bullet.isUsed() && wall.isAlive() && detectCollision(bullet, wall)) {
-                        bullet.setUsed(true);
-                        wall.setHealth(wall.getHealth() - 1);
-                        if (wall.getHealth() <= 0) {
-                            wall.setAlive(false);
-                            System.out.println("Muro en (" + wall.getX() + ", " + wall.getY() + ") destruido por el jugador " + bullet.getPlayerId());
-                        } else {
-                            System.out.println("Muro en (" + wall.getX() + ", " + wall.getY() + ") alcanzado, salud: " + wall.getHealth());
-                        }
-                        break;
-                    }
-                }
-                if (bullet.isUsed() || bullet.getY() < 0) {
-                    bulletIter.remove();
+        if (changeDirection) {
+            alienVelocityX *= -1;
+            for (int i = aliens.alive.nextSetBit(0); i >= 0; i = aliens.alive.nextSetBit(i + 1)) {
+                int descent = (int) (TILE_SIZE * EntityType.fromCode(type[i]).descent());
+                if (descent != 0) {
+                    y[i] += descent;
+                    alienGrid.update(i);
                 }
             }
+        }
+    }
 
-            Iterator<GameObject> alienBulletIter = alienBullets.iterator();
-            while (alienBulletIter.hasNext()) {
-                GameObject alienBullet = alienBulletIter.next();
-                alienBullet.setX((int)(alienBullet.getX() + alienBullet.getVelocityX()));
-                alienBullet.setY((int)(alienBullet.getY() + alienBullet.getVelocityY()));
-                for (GameObject wall : walls) {
-                    if (!alienBullet.isUsed() && wall.isAlive() && detectCollision(alienBullet, wall)) {
-                        alienBullet.setUsed(true);
-                        System.out.println("Bala alienígena bloqueada por el muro en (" + wall.getX() + ", " + wall.getY() + ")");
-                        break;
-                    }
-                }
-                for (Map.Entry<Integer, GameObject> entry : ships.entrySet()) {
-                    int playerId = entry.getKey();
-                    GameObject ship = entry.getValue();
-                    if (activePlayerStatus.getOrDefault(playerId, false) &&
-                            !alienBullet.isUsed() && detectCollision(alienBullet, ship)) {
-                        alienBullet.setUsed(true);
-                        eliminatePlayer(playerId);
-                        ship.setAlive(false);
-                        System.out.println("¡Jugador " + playerId + " alcanzado por bala alienígena! Jugador eliminado!");
-                        break;
+    private void updateBullets() {
+        int[] x = bullets.x;
+        int[] y = bullets.y;
+        int[] width = bullets.width;
+        int[] height = bullets.height;
+        // Los slots libres también se mueven: el bucle queda sin saltos
+        for (int i = 0, limit = bullets.limit(); i < limit; i++) {
+            y[i] -= 10;
+        }
+        for (int bullet = bullets.occupied.nextSetBit(0); bullet >= 0; bullet = bullets.occupied.nextSetBit(bullet + 1)) {
+            int alien = alienGrid.findFirst(x[bullet], y[bullet], width[bullet], height[bullet], isAliveAlien);
+            if (alien >= 0) {
+                bullets.setUsed(bullet, true);
+                EntityType alienType = EntityType.fromCode(aliens.type[alien]);
+                if (alienType.isArmored()) {
+                    aliens.health[alien]--;
+                    if (aliens.health[alien] <= 0) {
+                        aliens.setAlive(alien, false);
+                        alienCount--;
                     }
+                } else {
+                    aliens.setAlive(alien, false);
+                    alienCount--;
                 }
-                if (alienBullet.isUsed() || alienBullet.getY() > boardHeight || alienBullet.getX() < 0 || alienBullet.getX() > boardWidth) {
-                    alienBulletIter.remove();
+                if (!aliens.isAlive(alien)) {
+                    alienGrid.remove(alien);
                 }
+                int playerId = bullets.playerId[bullet];
+                addScore(playerId, alienType.points());
+                Log.debug(HIT_LOG, "Bloque alienígena alcanzado").with("jugador", playerId)
+                        .with("puntuacion", scores[playerId]).with("restantes", alienCount).log();
             }
-
-            if (alienCount == 0) {
-                for (Integer playerId : playerScores.keySet()) {
-                    playerScores.compute(playerId, (k, v) -> v == null ? 1000 : v + 1000);
-                }
-                System.out.println("Nivel " + currentLevel + " completado! Bonificación: 1000 añadido a todos los jugadores.");
-                alienBlocks.clear();
-                bullets.clear();
-                alienBullets.clear();
-                currentLevel++;
-                if (currentLevel == 2) {
-                    bossLevel2();
-                } else if (currentLevel == 3) {
-                    finalLevel3();
+            int wall = bullets.isUsed(bullet) ? -1
+                    : wallGrid.findFirst(x[bullet], y[bullet], width[bullet], height[bullet], isAliveWall);
+            if (wall >= 0) {
+                bullets.setUsed(bullet, true);
+                walls.health[wall]--;
+                if (walls.health[wall] <= 0) {
+                    walls.setAlive(wall, false);
+                    wallGrid.remove(wall);
+                    Log.debug(WALL_LOG, "Muro destruido").with("x", walls.x[wall]).with("y", walls.y[wall])
+                            .with("jugador", bullets.playerId[bullet]).log();
                 } else {
-                    currentLevel = 1;
-                    createAliens();
-                    for (Integer playerId : playerScores.keySet()) {
-                        playerScores.compute(playerId, (k, v) -> v == null ? 2000 : v + 2000);
-                    }
-                    System.out.println("¡Juego completado! Bonificación: 2000 añadido a todos los jugadores.");
+                    Log.debug(WALL_LOG, "Muro alcanzado").with("x", walls.x[wall]).with("y", walls.y[wall])
+                            .with("salud", walls.health[wall]).log();
                 }
             }
+            if (bullets.isUsed(bullet) || y[bullet] < 0) {
+                bullets.remove(bullet);
+            }
+        }
+    }
 
-            Iterator<Map.Entry<Integer, GameObject>> shipIter = ships.entrySet().iterator();
-            while (shipIter.hasNext()) {
-                Map.Entry<Integer, GameObject> entry = shipIter.next();
-                if (!entry.getValue().isAlive()) {
-                    shipIter.remove();
-                }
+    private void updateAlienBullets() {
+        int[] x = alienBullets.x;
+        int[] y = alienBullets.y;
+        int[] width = alienBullets.width;
+        int[] height = alienBullets.height;
+        double[] velocityX = alienBullets.velocityX;
+        double[] velocityY = alienBullets.velocityY;
+        for (int i = 0, limit = alienBullets.limit(); i < limit; i++) {
+            x[i] = (int)(x[i] + velocityX[i]);
+            y[i] = (int)(y[i] + velocityY[i]);
+        }
+        for (int bullet = alienBullets.occupied.nextSetBit(0); bullet >= 0; bullet = alienBullets.occupied.nextSetBit(bullet + 1)) {
+            int wall = wallGrid.findFirst(x[bullet], y[bullet], width[bullet], height[bullet], isAliveWall);
+            if (wall >= 0) {
+                alienBullets.setUsed(bullet, true);
+                Log.debug(WALL_LOG, "Bala alienígena bloqueada por un muro").with("x", walls.x[wall]).with("y", walls.y[wall]).log();
+            }
+            int ship = alienBullets.isUsed(bullet) ? -1
+                    : shipGrid.findFirst(x[bullet], y[bullet], width[bullet], height[bullet], isActiveShip);
+            if (ship >= 0) {
+                int playerId = ships.playerId[ship];
+                alienBullets.setUsed(bullet, true);
+                eliminatePlayer(playerId);
+                ships.setAlive(ship, false);
+                Log.info("Jugador alcanzado por bala alienígena").with("jugador", playerId).log();
+            }
+            if (alienBullets.isUsed(bullet) || y[bullet] > boardHeight || x[bullet] < 0 || x[bullet] > boardWidth) {
+                alienBullets.remove(bullet);
             }
         }
     }
 
     private void alienShoot(boolean isBossShot) {
-        if (alienBlocks.isEmpty()) return;
+        if (aliens.isEmpty()) return;
 
         if (isBossShot) {
-            for (GameObject alien : alienBlocks) {
-                if (alien.isAlive() && (alien.getType().equals("BOSS") || alien.getType().equals("FINAL_BOSS"))) {
-                    int bulletX = alien.getX() + (alien.getWidth() / 2);
-                    int bulletY = alien.getY() + alien.getHeight();
-                    String bulletType = alien.getType().equals("FINAL_BOSS") ? "FINAL_BOSS_BULLET" : "BOSS_BULLET";
-                    int bulletWidth = alien.getType().equals("FINAL_BOSS") ? TILE_SIZE * 3 / 8 : TILE_SIZE / 4;
-                    int bulletHeight = alien.getType().equals("FINAL_BOSS") ? TILE_SIZE * 3 / 4 : TILE_SIZE;
-                    if (alien.getType().equals("FINAL_BOSS")) {
-                        GameObject bullet1 = new GameObject(bulletX - bulletWidth / 2, bulletY,
-                                bulletWidth, bulletHeight, bulletType, -1);
-                        bullet1.setVelocityX(0);
-                        bullet1.setVelocityY(7);
-                        GameObject bullet2 = new GameObject(bulletX - bulletWidth / 2, bulletY,
-                                bulletWidth, bulletHeight, bulletType, -1);
-                        bullet2.setVelocityX(-3.5);
-                        bullet2.setVelocityY(6);
-                        GameObject bullet3 = new GameObject(bulletX - bulletWidth / 2, bulletY,
-                                bulletWidth, bulletHeight, bulletType, -1);
-                        bullet3.setVelocityX(3.5);
-                        bullet3.setVelocityY(6);
-                        alienBullets.add(bullet1);
-                        alienBullets.add(bullet2);
-                        alienBullets.add(bullet3);
+            for (int alien = aliens.alive.nextSetBit(0); alien >= 0; alien = aliens.alive.nextSetBit(alien + 1)) {
+                byte type = aliens.type[alien];
+                if (EntityType.fromCode(type).isBoss()) {
+                    boolean finalBoss = type == EntityTypes.FINAL_BOSS;
+                    int bulletX = aliens.x[alien] + (aliens.width[alien] / 2);
+                    int bulletY = aliens.y[alien] + aliens.height[alien];
+                    byte bulletType = finalBoss ? EntityTypes.FINAL_BOSS_BULLET : EntityTypes.BOSS_BULLET;
+                    int bulletWidth = finalBoss ? TILE_SIZE * 3 / 8 : TILE_SIZE / 4;
+                    int bulletHeight = finalBoss ? TILE_SIZE * 3 / 4 : TILE_SIZE;
+                    if (finalBoss) {
+                        addAlienBullet(bulletX - bulletWidth / 2, bulletY, bulletWidth, bulletHeight, bulletType, 0, 7);
+                        addAlienBullet(bulletX - bulletWidth / 2, bulletY, bulletWidth, bulletHeight, bulletType, -3.5, 6);
+                        addAlienBullet(bulletX - bulletWidth / 2, bulletY, bulletWidth, bulletHeight, bulletType, 3.5, 6);
                     } else {
-                        GameObject bullet = new GameObject(bulletX - bulletWidth / 2, bulletY,
-                                bulletWidth, bulletHeight, bulletType, -1);
-                        bullet.setVelocityX(0);
-                        bullet.setVelocityY(7);
-                        alienBullets.add(bullet);
+                        addAlienBullet(bulletX - bulletWidth / 2, bulletY, bulletWidth, bulletHeight, bulletType, 0, 7);
                     }
                     break;
                 }
             }
         } else {
-            Map<Integer, GameObject> frontLineAliens = new HashMap<>();
-            for (GameObject alien : alienBlocks) {
-                if (!alien.isAlive() || alien.getType().equals("BOSS") || alien.getType().equals("FINAL_BOSS")) continue;
-                int column = alien.getX() / TILE_SIZE;
-                if (!frontLineAliens.containsKey(column) ||
-                        alien.getY() > frontLineAliens.get(column).getY()) {
-                    frontLineAliens.put(column, alien);
+            // Alienígena más bajo de cada columna del tablero, en orden de columna
+            Arrays.fill(frontLine, -1);
+            int frontLineCount = 0;
+            for (int alien = aliens.alive.nextSetBit(0); alien >= 0; alien = aliens.alive.nextSetBit(alien + 1)) {
+                if (EntityType.fromCode(aliens.type[alien]).isBoss()) continue;
+                int column = Math.max(0, Math.min(COLUMNS - 1, aliens.x[alien] / TILE_SIZE));
+                if (frontLine[column] < 0) {
+                    frontLine[column] = alien;
+                    frontLineCount++;
+                } else if (aliens.y[alien] > aliens.y[frontLine[column]]) {
+                    frontLine[column] = alien;
                 }
             }
-            if (frontLineAliens.isEmpty()) return;
-            int shootersCount = currentLevel == 3 ? Math.min(3, frontLineAliens.size()) : Math.min(2, frontLineAliens.size());
-            if (frontLineAliens.size() > 1 && random.nextInt(100) < 50) {
+            if (frontLineCount == 0) return;
+            int shootersCount = Math.min(level.maxShooters, frontLineCount);
+            if (frontLineCount > 1 && random.nextInt(100) < 50) {
                 shootersCount = 1;
             }
-            List<GameObject> shooters = new ArrayList<>(frontLineAliens.values());
-            for (int i = 0; i < shootersCount && !shooters.isEmpty(); i++) {
-                int index = random.nextInt(shooters.size());
-                GameObject shooter = shooters.get(index);
-                shooters.remove(index);
-                int bulletX = shooter.getX() + (shooter.getWidth() / 2) - (TILE_SIZE / 16);
-                int bulletY = shooter.getY() + shooter.getHeight();
-                GameObject bullet = new GameObject(bulletX, bulletY,
-                        TILE_SIZE / 8, TILE_SIZE / 2, "ALIEN_BULLET", -1);
-                bullet.setVelocityX(0);
-                bullet.setVelocityY(7);
-                alienBullets.add(bullet);
+            int remaining = 0;
+            for (int alien : frontLine) {
+                if (alien >= 0) {
+                    shooters[remaining++] = alien;
+                }
+            }
+            for (int i = 0; i < shootersCount && remaining > 0; i++) {
+                int index = random.nextInt(remaining);
+                int shooter = shooters[index];
+                System.arraycopy(shooters, index + 1, shooters, index, remaining - index - 1);
+                remaining--;
+                int bulletX = aliens.x[shooter] + (aliens.width[shooter] / 2) - (TILE_SIZE / 16);
+                int bulletY = aliens.y[shooter] + aliens.height[shooter];
+                addAlienBullet(bulletX, bulletY, TILE_SIZE / 8, TILE_SIZE / 2, EntityTypes.ALIEN_BULLET, 0, 7);
             }
         }
     }
 
-    private void createAliens() {
-        synchronized(gameStateLock) {
-            alienBlocks.clear();
+    private void addAlienBullet(int x, int y, int width, int height, byte type, double velocityX, double velocityY) {
+        int bullet = alienBullets.add(x, y, width, height, type, -1);
+        alienBullets.velocityX[bullet] = velocityX;
+        alienBullets.velocityY[bullet] = velocityY;
+    }
+
+    // Copia en bloque las entidades de la plantilla; un nivel sin muros conserva los que haya
+    private void startLevel(int number) {
+        level = levels.level(number);
+        aliens.clear();
+        aliens.addAll(level.aliens);
+        if (level.walls != null) {
             walls.clear();
-            String[] colors = {"CYAN", "MAGENTA", "YELLOW"};
-            for (int row = 0; row < 10; row++) {
-                for (int col = 0; col < 16; col++) {
-                    if ((row % 3 == 2) || (col % 4 == 3)) continue;
-                    if (row % 3 == 0 && col % 4 != 1) continue;
-                    GameObject alien = new GameObject(
-                            TILE_SIZE + col * TILE_SIZE,
-                            TILE_SIZE + row * TILE_SIZE,
-                            TILE_SIZE, TILE_SIZE, "ALIEN", -1);
-                    alien.setBlockType((row % 3) + (col % 2));
-                    alien.setColor(colors[row % colors.length]);
-                    alienBlocks.add(alien);
-                }
-            }
-            // Create walls
-            int[] wallXPositions = {TILE_SIZE * 4, TILE_SIZE * 12, TILE_SIZE * 20, TILE_SIZE * 28};
-            for (int x : wallXPositions) {
-                GameObject wall = new GameObject(x, boardHeight - TILE_SIZE * 4,
-                        TILE_SIZE, TILE_SIZE, "WALL", -1);
-                wall.setHealth(3);
-                wall.setAlive(true);
-                walls.add(wall);
-            }
-            alienCount = alienBlocks.size();
-            currentLevel = 1;
-            System.out.println("Creados " + alienCount + " bloques alienígenas y " + walls.size() + " muros para el Nivel 1");
-        }
-    }
-
-    private void bossLevel2() {
-        synchronized(gameStateLock) {
-            alienBlocks.clear();
-            GameObject boss = new GameObject(
-                    boardWidth / 2 - TILE_SIZE * 2,
-                    TILE_SIZE,
-                    TILE_SIZE * 4,
-                    TILE_SIZE * 2,
-                    "BOSS",
-                    -1
-            );
-            boss.setColor("RED");
-            alienBlocks.add(boss);
-            String[] colors = {"CYAN", "MAGENTA", "YELLOW", "ORANGE"};
-            for (int row = 0; row < 4; row++) {
-                for (int col = 0; col < 8; col++) {
-                    GameObject newAlien = new GameObject(
-                            TILE_SIZE * 2 + col * (TILE_SIZE * 3),
-                            TILE_SIZE * 5 + row * (TILE_SIZE * 2),
-                            TILE_SIZE * 2,
-                            TILE_SIZE * 2,
-                            "NEW_ALIEN",
-                            -1
-                    );
-                    newAlien.setColor(colors[row % colors.length]);
-                    newAlien.setBlockType(row % 3);
-                    alienBlocks.add(newAlien);
-                }
-            }
-            alienCount = alienBlocks.size();
-            System.out.println("Creado jefe y " + (alienCount - 1) + " nuevos bloques alienígenas para el Nivel 2");
-        }
-    }
-
-    private void finalLevel3() {
-        synchronized(gameStateLock) {
-            alienBlocks.clear();
-            GameObject finalBoss = new GameObject(
-                    boardWidth / 2 - TILE_SIZE * 3,
-                    TILE_SIZE,
-                    TILE_SIZE * 5,
-                    TILE_SIZE * 3,
-                    "FINAL_BOSS",
-                    -1
-            );
-            finalBoss.setColor("PURPLE");
-            finalBoss.setHealth(5);
-            alienBlocks.add(finalBoss);
-            String[] colors = {"RED", "PINK", "WHITE"};
-            for (int row = 0; row < 3; row++) {
-                for (int col = 0; col < 10; col++) {
-                    GameObject finalAlien = new GameObject(
-                            TILE_SIZE + col * (TILE_SIZE * 3),
-                            TILE_SIZE * 5 + row * (TILE_SIZE * 2),
-                            TILE_SIZE,
-                            TILE_SIZE,
-                            "FINAL_ALIEN",
-                            -1
-                    );
-                    finalAlien.setColor(colors[row % colors.length]);
-                    finalAlien.setBlockType(row % 3);
-                    alienBlocks.add(finalAlien);
-                }
-            }
-            alienCount = alienBlocks.size();
-            System.out.println("Creado jefe final y " + (alienCount - 1) + " bloques alienígenas finales para el Nivel 3");
+            walls.addAll(level.walls);
+            indexEntities(wallGrid, walls);
+        }
+        alienShotInterval = level.alienShotInterval;
+        alienCount = aliens.size();
+        indexEntities(alienGrid, aliens);
+        Log.info("Nivel creado").with("nivel", level.number).with("nombre", level.name)
+                .with("aliens", alienCount).with("muros", walls.size()).log();
+    }
+
+    // Formación de prueba con count alienígenas de medio tile y los muros del nivel 1 (benchmarks)
+    void createFormation(int count) {
+        startLevel(1);
+        aliens.clear();
+        int size = TILE_SIZE / 2;
+        int columns = count <= 512 ? 32 : 48;
+        for (int i = 0; i < count; i++) {
+            int alien = aliens.add(TILE_SIZE + (i % columns) * size, TILE_SIZE + (i / columns) * size,
+                    size, size, EntityTypes.ALIEN, -1);
+            aliens.color[alien] = (byte) (EntityTypes.CYAN + i % 3);
         }
+        alienCount = aliens.size();
+        indexEntities(alienGrid, aliens);
+        publish();
+    }
+
+    int getAlienCount() {
+        return alienCount;
+    }
+
+    int getBulletCount() {
+        return bullets.size();
+    }
+
+    // Estado actual, sin esperar a que se publique la vista (benchmarks)
+    boolean isAllPlayersEliminated() {
+        return allPlayersEliminated;
     }
 
-    private boolean detectCollision(GameObject a, GameObject b) {
-        return a.getX() < b.getX() + b.getWidth() &&
-               a.getX() + a.getWidth() > b.getX() &&
-               a.getY() < b.getY() + b.getHeight() &&
-               a.getY() + a.getHeight() > b.getY();
+    private void indexEntities(SpatialGrid grid, EntityStore store) {
+        grid.clear();
+        for (int slot = store.alive.nextSetBit(0); slot >= 0; slot = store.alive.nextSetBit(slot + 1)) {
+            grid.add(slot);
+        }
     }
 
     private void resetGame() {
-        synchronized(gameStateLock) {
-            Set<Integer> playerIds = new HashSet<>(ships.keySet());
-            ships.clear();
-            alienBlocks.clear();
-            bullets.clear();
-            alienBullets.clear();
-            walls.clear();
-            gameOver = false;
-            allPlayersEliminated = false;
-            alienVelocityX = 1;
-            alienShotInterval = 1500;
-            bossShotInterval = 1000;
-            finalAlienShotInterval = 1200;
-            activePlayerStatus.clear();
-            playerScores.clear();
-            currentLevel = 1;
-            createAliens();
-            for (int id : playerIds) {
-                addPlayer(id);
-            }
-            System.out.println("Juego reiniciado con " + playerIds.size() + " jugadores");
+        BitSet playerIds = new BitSet();
+        for (int ship = ships.occupied.nextSetBit(0); ship >= 0; ship = ships.occupied.nextSetBit(ship + 1)) {
+            playerIds.set(ships.playerId[ship]);
         }
+        ships.clear();
+        Arrays.fill(shipSlots, -1);
+        shipGrid.clear();
+        aliens.clear();
+        bullets.clear();
+        alienBullets.clear();
+        walls.clear();
+        gameOver = false;
+        allPlayersEliminated = false;
+        alienVelocityX = 1;
+        players.clear();
+        activePlayers.clear();
+        scoredPlayers.clear();
+        startLevel(1);
+        for (int id = playerIds.nextSetBit(0); id >= 0; id = playerIds.nextSetBit(id + 1)) {
+            spawnPlayer(id);
+        }
+        Log.info("Juego reiniciado").with("jugadores", playerIds.cardinality()).log();
+    }
+
+    // Solo desde el hilo del tick: copia el estado actual en una vista inmutable para los lectores.
+    // La copia es proporcional al número de entidades; las salas solo publican en los ticks con broadcast
+    public void publish() {
+        published = GameStateView.capture(groups, activePlayers, scoredPlayers, scores, players, inputSequences,
+                allPlayersEliminated, recordTick, tickMicros);
     }
 
+    // Último estado publicado; todos sus datos corresponden al mismo tick
+    public GameStateView view() {
+        return published;
+    }
+
+    // Vistas GameObject de todas las entidades, en el orden naves, alienígenas, balas, balas alienígenas, muros
     public ArrayList<GameObject> getGameObjects() {
-        synchronized(gameStateLock) {
-            ArrayList<GameObject> objects = new ArrayList<>();
-            for (Map.Entry<Integer, GameObject> entry : ships.entrySet()) {
-                int playerId = entry.getKey();
-                if (activePlayerStatus.getOrDefault(playerId, false)) {
-                    objects.add(entry.getValue());
-                }
-            }
-            objects.addAll(alienBlocks);
-            objects.addAll(bullets);
-            objects.addAll(alienBullets);
-            objects.addAll(walls);
-            return objects;
-        }
+        return published.getGameObjects();
+    }
+
+    // Mismo contenido y orden que getGameObjects(), pero sin crear objetos
+    public void forEachEntity(EntityVisitor visitor) {
+        published.forEachEntity(visitor);
+    }
+
+    public int getEntityCount() {
+        return published.getEntityCount();
+    }
+
+    // Entidades ocupadas por grupo (ENTITY_GROUPS), para las métricas
+    public int[] getEntityCounts() {
+        return published.getEntityCounts();
+    }
+
+    private int nextEntityId() {
+        return ++lastEntityId;
     }
 
     public int getScore(int playerId) {
-        synchronized(gameStateLock) {
-            return playerScores.getOrDefault(playerId, 0);
-        }
+        return published.getScore(playerId);
     }
 
     public Map<Integer, Integer> getPlayerScores() {
-        synchronized(gameStateLock) {
-            return new HashMap<>(playerScores);
-        }
+        return published.getPlayerScores();
+    }
+
+    // Para cada jugador presente, su última entrada aplicada (0 si aún no ha enviado ninguna numerada)
+    public Map<Integer, Integer> getInputSequences() {
+        return published.getInputSequences();
     }
 
     public boolean isGameOver() {
-        return allPlayersEliminated;
+        return published.isGameOver();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,184 @@
+package game;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Copia inmutable del estado de una partida al final de un tick. La publica el hilo del tick
+ * (GameState.publish) en una referencia volatile y la leen sin bloqueos los hilos de E/S, el
+ * broadcast y las métricas: ninguna lectura espera a la simulación ni la frena.
+ * Las entidades van en un int[] plano, en el orden naves activas, alienígenas, balas,
+ * balas alienígenas y muros (el mismo de getGameObjects). Puntuaciones y secuencias de entrada van
+ * por playerId en int[] con un BitSet de presentes, como en GameState; los Map solo se crean si se piden.
+ * tick es el número de ticks simulados al capturarla y tickMicros su duración: los clientes colocan
+ * cada estado en el tiempo del servidor en lugar de usar su instante de llegada.
+ */
+public final class GameStateView {
+    private static final int ID = 0;
+    private static final int X = 1;
+    private static final int Y = 2;
+    private static final int WIDTH = 3;
+    private static final int HEIGHT = 4;
+    private static final int TYPE = 5;
+    private static final int COLOR = 6;
+    private static final int FLAGS = 7;
+    private static final int BLOCK_TYPE = 8;
+    private static final int HEALTH = 9;
+    private static final int PLAYER_ID = 10;
+    private static final int STRIDE = 11;
+
+    private static final int FLAG_ALIVE = 1;
+    private static final int FLAG_USED = 2;
+
+    private final int[] entities;
+    // Velocidad x, y de cada entidad; solo la usan las vistas GameObject del protocolo antiguo
+    private final double[] velocities;
+    private final int entityCount;
+    private final int[] groupCounts;
+    private final BitSet scoredPlayers;
+    private final int[] scores;
+    private final BitSet players;
+    private final int[] inputSequences;
+    private final boolean gameOver;
+    private final long tick;
+    private final int tickMicros;
+
+    private GameStateView(int[] entities, double[] velocities, int entityCount, int[] groupCounts,
+                          BitSet scoredPlayers, int[] scores, BitSet players, int[] inputSequences, boolean gameOver,
+                          long tick, int tickMicros) {
+        this.entities = entities;
+        this.velocities = velocities;
+        this.entityCount = entityCount;
+        this.groupCounts = groupCounts;
+        this.scoredPlayers = scoredPlayers;
+        this.scores = scores;
+        this.players = players;
+        this.inputSequences = inputSequences;
+        this.gameOver = gameOver;
+        this.tick = tick;
+        this.tickMicros = tickMicros;
+    }
+
+    // Lo llama GameState desde el hilo que posee el estado; stores en el orden de ENTITY_GROUPS.
+    // scores e inputSequences van por playerId y solo se copian hasta el último jugador presente
+    static GameStateView capture(EntityStore[] stores, BitSet activePlayers, BitSet scoredPlayers, int[] scores,
+                                 BitSet players, int[] inputSequences, boolean gameOver, long tick, int tickMicros) {
+        int capacity = 0;
+        int[] groupCounts = new int[stores.length];
+        for (int group = 0; group < stores.length; group++) {
+            groupCounts[group] = stores[group].size();
+            capacity += groupCounts[group];
+        }
+        int[] entities = new int[capacity * STRIDE];
+        double[] velocities = new double[capacity * 2];
+        int count = 0;
+        for (int group = 0; group < stores.length; group++) {
+            EntityStore store = stores[group];
+            for (int slot = store.occupied.nextSetBit(0); slot >= 0; slot = store.occupied.nextSetBit(slot + 1)) {
+                // Las naves de jugadores eliminados no se muestran
+                if (group == 0 && !activePlayers.get(store.playerId[slot])) {
+                    continue;
+                }
+                int offset = count * STRIDE;
+                entities[offset + ID] = store.id[slot];
+                entities[offset + X] = store.x[slot];
+                entities[offset + Y] = store.y[slot];
+                entities[offset + WIDTH] = store.width[slot];
+                entities[offset + HEIGHT] = store.height[slot];
+                entities[offset + TYPE] = store.type[slot];
+                entities[offset + COLOR] = store.color[slot];
+                entities[offset + FLAGS] = (store.isAlive(slot) ? FLAG_ALIVE : 0) | (store.isUsed(slot) ? FLAG_USED : 0);
+                entities[offset + BLOCK_TYPE] = store.blockType[slot];
+                entities[offset + HEALTH] = store.health[slot];
+                entities[offset + PLAYER_ID] = store.playerId[slot];
+                velocities[count * 2] = store.velocityX[slot];
+                velocities[count * 2 + 1] = store.velocityY[slot];
+                count++;
+            }
+        }
+        return new GameStateView(entities, velocities, count, groupCounts,
+                (BitSet) scoredPlayers.clone(), Arrays.copyOf(scores, scoredPlayers.length()),
+                (BitSet) players.clone(), Arrays.copyOf(inputSequences, players.length()), gameOver,
+                tick, tickMicros);
+    }
+
+    public void forEachEntity(EntityVisitor visitor) {
+        for (int i = 0; i < entityCount; i++) {
+            int offset = i * STRIDE;
+            int flags = entities[offset + FLAGS];
+            visitor.visit(entities[offset + ID], entities[offset + X], entities[offset + Y],
+                    entities[offset + WIDTH], entities[offset + HEIGHT],
+                    (byte) entities[offset + TYPE], (byte) entities[offset + COLOR],
+                    (flags & FLAG_ALIVE) != 0, (flags & FLAG_USED) != 0,
+                    entities[offset + BLOCK_TYPE], entities[offset + HEALTH], entities[offset + PLAYER_ID]);
+        }
+    }
+
+    public ArrayList<GameObject> getGameObjects() {
+        ArrayList<GameObject> objects = new ArrayList<>(entityCount);
+        for (int i = 0; i < entityCount; i++) {
+            int offset = i * STRIDE;
+            int flags = entities[offset + FLAGS];
+            GameObject obj = new GameObject(entities[offset + X], entities[offset + Y],
+                    entities[offset + WIDTH], entities[offset + HEIGHT],
+                    EntityType.fromCode(entities[offset + TYPE]), entities[offset + PLAYER_ID]);
+            obj.setColorCode((byte) entities[offset + COLOR]);
+            obj.setAlive((flags & FLAG_ALIVE) != 0);
+            obj.setUsed((flags & FLAG_USED) != 0);
+            obj.setBlockType(entities[offset + BLOCK_TYPE]);
+            obj.setHealth(entities[offset + HEALTH]);
+            obj.setVelocityX(velocities[i * 2]);
+            obj.setVelocityY(velocities[i * 2 + 1]);
+            obj.setId(entities[offset + ID]);
+            objects.add(obj);
+        }
+        return objects;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    // Entidades ocupadas por grupo (GameState.ENTITY_GROUPS), para las métricas
+    public int[] getEntityCounts() {
+        return groupCounts.clone();
+    }
+
+    public int getScore(int playerId) {
+        return playerId >= 0 && scoredPlayers.get(playerId) ? scores[playerId] : 0;
+    }
+
+    // Map nuevo en cada llamada (protocolo y clientes antiguos); para un jugador, getScore
+    public Map<Integer, Integer> getPlayerScores() {
+        return toMap(scoredPlayers, scores);
+    }
+
+    // Para cada jugador presente, su última entrada aplicada (0 si aún no ha enviado ninguna numerada)
+    public Map<Integer, Integer> getInputSequences() {
+        return toMap(players, inputSequences);
+    }
+
+    private static Map<Integer, Integer> toMap(BitSet present, int[] values) {
+        Map<Integer, Integer> map = new HashMap<>();
+        for (int p = present.nextSetBit(0); p >= 0; p = present.nextSetBit(p + 1)) {
+            map.put(p, values[p]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    // 0 si la vista es anterior al primer tick
+    public int getTickMicros() {
+        return tickMicros;
+    }
+}
@@ -0,0 +1,175 @@
+package game;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import logging.Log;
+
+/*
+ * Grabación de una partida para reproducirla con Replay. Fichero binario (DataOutputStream):
+ * una cabecera con la semilla de GameState, el dt del bucle y el texto de los niveles con que empieza,
+ * y después un registro por cada alta, baja y entrada aplicada, en el orden en que las aplicó el tick,
+ * seguidos al final de cada tick por su número y el hash del estado (GameState.stateHash). Si levels.json
+ * se recarga durante la partida, el texto nuevo va en un registro LEVELS al principio del tick que lo usa.
+ *
+ *   cabecera: MAGIC, VERSION, semilla, dt, niveles (longitud y UTF-8)
+ *   JOIN/LEAVE: tick, jugador       INPUT: tick, jugador, máscara INPUT_*, secuencia
+ *   LEVELS: tick, niveles           TICK: tick, hash
+ *
+ * Escribe el hilo del tick; close puede llegar desde otro hilo (la sala se cierra), por eso los métodos
+ * están sincronizados. Si falla la escritura se deja de grabar sin afectar a la partida.
+ */
+public final class InputLog implements GameState.Recorder, Closeable {
+    static final int MAGIC = 0x53495250; // "SIRP"
+    static final int VERSION = 2;
+    static final byte JOIN = 1;
+    static final byte LEAVE = 2;
+    static final byte INPUT = 3;
+    static final byte TICK = 4;
+    static final byte LEVELS = 5;
+    // Ticks entre vaciados del buffer al disco: si el servidor muere se pierde como mucho este tramo
+    private static final int FLUSH_TICKS = 30;
+
+    private final String name;
+    private DataOutputStream out;
+    private int unflushedTicks;
+
+    // state no debe haber avanzado aún ningún tick; la grabación empieza con state.setRecorder(log)
+    public InputLog(OutputStream out, String name, GameState state, double dt) throws IOException {
+        this.name = name;
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeLong(state.getSeed());
+        this.out.writeDouble(dt);
+        writeText(this.out, state.getLevels().text());
+    }
+
+    // Graba desde el principio la partida de state
+    public static InputLog record(GameState state, Path file, double dt) throws IOException {
+        InputLog log = new InputLog(Files.newOutputStream(file), file.toString(), state, dt);
+        state.setRecorder(log);
+        return log;
+    }
+
+    @Override
+    public synchronized void levels(long tick, String definition) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(LEVELS);
+            out.writeLong(tick);
+            writeText(out, definition);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void join(long tick, int playerId) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(JOIN);
+            out.writeLong(tick);
+            out.writeInt(playerId);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void leave(long tick, int playerId) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(LEAVE);
+            out.writeLong(tick);
+            out.writeInt(playerId);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void input(long tick, int playerId, int inputs, int sequence) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(INPUT);
+            out.writeLong(tick);
+            out.writeInt(playerId);
+            out.writeInt(inputs);
+            out.writeInt(sequence);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void endTick(long tick, long stateHash) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(TICK);
+            out.writeLong(tick);
+            out.writeLong(stateHash);
+            if (++unflushedTicks >= FLUSH_TICKS) {
+                unflushedTicks = 0;
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.warn("No se pudo cerrar la grabación").with("fichero", name).with("error", e.getMessage()).log();
+        }
+        out = null;
+    }
+
+    // writeUTF no admite más de 64 KB
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid text length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void fail(IOException e) {
+        Log.error("Error al escribir la grabación, se deja de grabar").with("fichero", name)
+                .with("error", e.getMessage()).log();
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+        out = null;
+    }
+}
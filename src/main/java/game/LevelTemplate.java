@@ -0,0 +1,202 @@
+package game;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Un nivel ya analizado: las entidades están colocadas en píxeles en arrays paralelos con el mismo
+ * formato que EntityStore, así que empezar el nivel es una copia en bloque (EntityStore.addAll) sin
+ * recorrer la definición. También lleva los parámetros de disparo, teletransporte y bonificación.
+ *
+ * Cada formación del fichero es una rejilla de texto: una fila de "layout" por fila de entidades,
+ * '.' o ' ' para un hueco y un dígito con la forma (blockType) de la entidad. Las posiciones y tamaños
+ * van en casillas del tablero; "colors" se reparte por filas de forma cíclica.
+ */
+final class LevelTemplate {
+    static final class Block {
+        final int count;
+        final int[] x;
+        final int[] y;
+        final int[] width;
+        final int[] height;
+        final int[] health;
+        final int[] blockType;
+        final byte[] type;
+        final byte[] color;
+
+        private Block(int count, int[] x, int[] y, int[] width, int[] height, int[] health, int[] blockType,
+                      byte[] type, byte[] color) {
+            this.count = count;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.health = health;
+            this.blockType = blockType;
+            this.type = type;
+            this.color = color;
+        }
+    }
+
+    final int number;
+    final String name;
+    final Block aliens;
+    // null: el nivel conserva los muros que haya
+    final Block walls;
+    final int levelBonus;
+    final int alienShotInterval;
+    final int alienShotChance;
+    final int maxShooters;
+    // El intervalo de disparo se acorta a medida que quedan menos alienígenas
+    final boolean adaptiveShotInterval;
+    final int bossShotInterval;
+    final int bossShotChance;
+    // 0 sin teletransporte del jefe
+    final int teleportInterval;
+
+    private LevelTemplate(int number, String name, Block aliens, Block walls, int levelBonus,
+                          int alienShotInterval, int alienShotChance, int maxShooters, boolean adaptiveShotInterval,
+                          int bossShotInterval, int bossShotChance, int teleportInterval) {
+        this.number = number;
+        this.name = name;
+        this.aliens = aliens;
+        this.walls = walls;
+        this.levelBonus = levelBonus;
+        this.alienShotInterval = alienShotInterval;
+        this.alienShotChance = alienShotChance;
+        this.maxShooters = maxShooters;
+        this.adaptiveShotInterval = adaptiveShotInterval;
+        this.bossShotInterval = bossShotInterval;
+        this.bossShotChance = bossShotChance;
+        this.teleportInterval = teleportInterval;
+    }
+
+    static LevelTemplate parse(int number, Map<String, Object> definition, int tileSize) {
+        String where = "level " + number;
+        Map<String, Object> alienShots = object(definition, "alienShots", where);
+        Map<String, Object> bossShots = object(definition, "bossShots", where);
+        return new LevelTemplate(
+                number,
+                string(definition, "name", "Nivel " + number),
+                parseBlock(list(definition, "aliens", where), tileSize, where + " aliens"),
+                definition.containsKey("walls") ? parseBlock(list(definition, "walls", where), tileSize, where + " walls") : null,
+                integer(definition, "levelBonus", 0, where),
+                integer(alienShots, "interval", -1, where + " alienShots"),
+                integer(alienShots, "chance", 0, where + " alienShots"),
+                integer(alienShots, "shooters", 1, where + " alienShots"),
+                Boolean.TRUE.equals(alienShots.get("adaptive")),
+                integer(bossShots, "interval", -1, where + " bossShots"),
+                integer(bossShots, "chance", 0, where + " bossShots"),
+                integer(definition, "teleportInterval", 0, where));
+    }
+
+    private static Block parseBlock(List<Object> formations, int tileSize, String where) {
+        int capacity = 0;
+        for (Object formation : formations) {
+            for (Object row : list(asObject(formation, where), "layout", where)) {
+                capacity += String.valueOf(row).length();
+            }
+        }
+        int[] x = new int[capacity];
+        int[] y = new int[capacity];
+        int[] width = new int[capacity];
+        int[] height = new int[capacity];
+        int[] health = new int[capacity];
+        int[] blockType = new int[capacity];
+        byte[] type = new byte[capacity];
+        byte[] color = new byte[capacity];
+        int count = 0;
+        for (Object element : formations) {
+            Map<String, Object> formation = asObject(element, where);
+            EntityType entityType = EntityType.forName(string(formation, "type", null));
+            if (entityType == null) {
+                throw new IllegalArgumentException("Unknown entity type in " + where + ": " + formation.get("type"));
+            }
+            int originX = integer(formation, "x", -1, where);
+            int originY = integer(formation, "y", -1, where);
+            int cellWidth = integer(formation, "width", 1, where);
+            int cellHeight = integer(formation, "height", 1, where);
+            int spacingX = integer(formation, "spacingX", cellWidth, where);
+            int spacingY = integer(formation, "spacingY", cellHeight, where);
+            int entityHealth = integer(formation, "health", 3, where);
+            if (entityHealth > EntityTypes.MAX_HEALTH) {
+                throw new IllegalArgumentException("'health' above " + EntityTypes.MAX_HEALTH + " in " + where);
+            }
+            List<Object> colors = formation.containsKey("colors") ? list(formation, "colors", where) : Collections.emptyList();
+            List<Object> layout = list(formation, "layout", where);
+            for (int row = 0; row < layout.size(); row++) {
+                String cells = String.valueOf(layout.get(row));
+                byte rowColor = colors.isEmpty() ? EntityTypes.NO_COLOR
+                        : EntityTypes.colorCode(String.valueOf(colors.get(row % colors.size())));
+                for (int col = 0; col < cells.length(); col++) {
+                    char cell = cells.charAt(col);
+                    if (cell == '.' || cell == ' ') {
+                        continue;
+                    }
+                    if (cell < '0' || cell > '9') {
+                        throw new IllegalArgumentException("Invalid layout cell '" + cell + "' in " + where);
+                    }
+                    x[count] = (originX + col * spacingX) * tileSize;
+                    y[count] = (originY + row * spacingY) * tileSize;
+                    width[count] = cellWidth * tileSize;
+                    height[count] = cellHeight * tileSize;
+                    health[count] = entityHealth;
+                    blockType[count] = cell - '0';
+                    type[count] = entityType.code();
+                    color[count] = rowColor;
+                    count++;
+                }
+            }
+        }
+        return new Block(count, Arrays.copyOf(x, count), Arrays.copyOf(y, count), Arrays.copyOf(width, count),
+                Arrays.copyOf(height, count), Arrays.copyOf(health, count), Arrays.copyOf(blockType, count),
+                Arrays.copyOf(type, count), Arrays.copyOf(color, count));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> asObject(Object value, String where) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected an object in " + where);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    static Map<String, Object> object(Map<String, Object> parent, String key, String where) {
+        return asObject(required(parent, key, where), where + " " + key);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Object> list(Map<String, Object> parent, String key, String where) {
+        Object value = required(parent, key, where);
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("Expected a list for '" + key + "' in " + where);
+        }
+        return (List<Object>) value;
+    }
+
+    // defaultValue < 0: el campo es obligatorio
+    static int integer(Map<String, Object> parent, String key, int defaultValue, String where) {
+        Object value = defaultValue < 0 ? required(parent, key, where) : parent.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Long) || (Long) value < 0 || (Long) value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Expected a non-negative integer for '" + key + "' in " + where);
+        }
+        return ((Long) value).intValue();
+    }
+
+    private static String string(Map<String, Object> parent, String key, String defaultValue) {
+        Object value = parent.get(key);
+        return value == null ? defaultValue : String.valueOf(value);
+    }
+
+    private static Object required(Map<String, Object> parent, String key, String where) {
+        Object value = parent.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing '" + key + "' in " + where);
+        }
+        return value;
+    }
+}
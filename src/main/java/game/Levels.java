@@ -0,0 +1,149 @@
+package game;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import logging.Log;
+
+/*
+ * Niveles de la partida, definidos en levels.json (el del classpath, o el fichero indicado con
+ * -Dspaceinvaders.levels=ruta). El fichero se analiza una sola vez en plantillas inmutables
+ * (LevelTemplate) que GameState consulta al empezar cada nivel. Con un fichero externo, un hilo
+ * vigila sus cambios y publica los niveles nuevos; las partidas en curso los usan desde el siguiente
+ * nivel. Si el fichero modificado tiene errores se conservan los niveles anteriores.
+ */
+final class Levels {
+    private static final String RESOURCE = "/levels.json";
+    private static final String FILE = System.getProperty("spaceinvaders.levels");
+
+    private static volatile Levels current = loadInitial();
+
+    private final List<LevelTemplate> levels;
+    private final int completionBonus;
+    private final String text;
+
+    private Levels(List<LevelTemplate> levels, int completionBonus, String text) {
+        this.levels = Collections.unmodifiableList(levels);
+        this.completionBonus = completionBonus;
+        this.text = text;
+    }
+
+    static Levels current() {
+        return current;
+    }
+
+    // number empieza en 1; si un fichero recargado tiene menos niveles se usa el último
+    LevelTemplate level(int number) {
+        return levels.get(Math.max(1, Math.min(number, levels.size())) - 1);
+    }
+
+    int count() {
+        return levels.size();
+    }
+
+    // Bonificación para todos al completar el último nivel
+    int completionBonus() {
+        return completionBonus;
+    }
+
+    // Texto del fichero del que salen; las grabaciones (InputLog) lo guardan para reproducir con los mismos niveles
+    String text() {
+        return text;
+    }
+
+    static Levels parse(String text, int tileSize) {
+        Map<String, Object> root = LevelTemplate.asObject(Json.parse(text), "levels file");
+        List<Object> definitions = LevelTemplate.list(root, "levels", "levels file");
+        if (definitions.isEmpty()) {
+            throw new IllegalArgumentException("Levels file defines no levels");
+        }
+        List<LevelTemplate> levels = new ArrayList<>(definitions.size());
+        for (int i = 0; i < definitions.size(); i++) {
+            levels.add(LevelTemplate.parse(i + 1, LevelTemplate.asObject(definitions.get(i), "level " + (i + 1)), tileSize));
+        }
+        return new Levels(levels, LevelTemplate.integer(root, "completionBonus", 0, "levels file"), text);
+    }
+
+    // Vuelve a leer el fichero externo (o el del classpath); devuelve false si no se pudo
+    static boolean reload() {
+        try {
+            current = FILE != null ? parse(readFile(Paths.get(FILE)), GameState.TILE_SIZE) : loadResource();
+            Log.info("Niveles recargados").with("niveles", current.count()).with("fichero", FILE).log();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.warn("No se pudieron recargar los niveles; se mantienen los anteriores")
+                    .with("fichero", FILE).with("error", e.getMessage()).log();
+            return false;
+        }
+    }
+
+    private static Levels loadInitial() {
+        if (FILE == null) {
+            return loadResource();
+        }
+        Path file = Paths.get(FILE);
+        Levels levels;
+        try {
+            levels = parse(readFile(file), GameState.TILE_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read levels file " + file, e);
+        }
+        watch(file);
+        return levels;
+    }
+
+    private static Levels loadResource() {
+        try (InputStream in = Levels.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing classpath resource " + RESOURCE);
+            }
+            return parse(new String(in.readAllBytes(), StandardCharsets.UTF_8), GameState.TILE_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + RESOURCE, e);
+        }
+    }
+
+    private static String readFile(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static void watch(Path file) {
+        Path absolute = file.toAbsolutePath();
+        Thread thread = new Thread(() -> {
+            try (WatchService watcher = absolute.getFileSystem().newWatchService()) {
+                absolute.getParent().register(watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                while (true) {
+                    WatchKey key = watcher.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= absolute.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    if (changed) {
+                        reload();
+                    }
+                }
+            } catch (IOException e) {
+                Log.warn("No se pueden vigilar los cambios de los niveles").with("fichero", absolute)
+                        .with("error", e.getMessage()).log();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "LevelWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
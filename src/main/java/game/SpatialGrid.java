@@ -0,0 +1,152 @@
+package game;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/*
+ * Índice espacial uniforme sobre el tablero: cada celda guarda los slots de un EntityStore que la solapan.
+ * Se mantiene de forma incremental (update solo mueve el slot si cambia de celdas) y las
+ * consultas de colisión solo miran las celdas que cubre el rectángulo que se prueba.
+ * Los objetos fuera del tablero se asignan a las celdas del borde.
+ */
+final class SpatialGrid {
+    private final EntityStore store;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[][] cells;
+    private final int[] cellCounts;
+    // Rango de celdas {minCol, minRow, maxCol, maxRow} de cada slot indexado; minCol = -1 si no lo está
+    private int[] spans = new int[0];
+    private int size;
+
+    SpatialGrid(EntityStore store, int cellSize, int columns, int rows) {
+        this.store = store;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.cells = new int[columns * rows][4];
+        this.cellCounts = new int[columns * rows];
+    }
+
+    void add(int slot) {
+        if (slot * 4 >= spans.length) {
+            int previous = spans.length;
+            spans = Arrays.copyOf(spans, Math.max(64, (slot + 1) * 8));
+            Arrays.fill(spans, previous, spans.length, -1);
+        }
+        if (spans[slot * 4] >= 0) {
+            update(slot);
+            return;
+        }
+        setSpan(slot);
+        forEachCell(slot, true);
+        size++;
+    }
+
+    void remove(int slot) {
+        if (!contains(slot)) {
+            return;
+        }
+        forEachCell(slot, false);
+        spans[slot * 4] = -1;
+        size--;
+    }
+
+    // Llamar después de mover o redimensionar un slot indexado
+    void update(int slot) {
+        if (!contains(slot)) {
+            return;
+        }
+        int base = slot * 4;
+        int minCol = column(store.x[slot]);
+        int minRow = row(store.y[slot]);
+        int maxCol = column(store.x[slot] + store.width[slot] - 1);
+        int maxRow = row(store.y[slot] + store.height[slot] - 1);
+        if (minCol == spans[base] && minRow == spans[base + 1] &&
+                maxCol == spans[base + 2] && maxRow == spans[base + 3]) {
+            return;
+        }
+        forEachCell(slot, false);
+        setSpan(slot);
+        forEachCell(slot, true);
+    }
+
+    void clear() {
+        Arrays.fill(cellCounts, 0);
+        Arrays.fill(spans, -1);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Primer slot indexado que solapa con el rectángulo y cumple filter, o -1
+    int findFirst(int x, int y, int width, int height, IntPredicate filter) {
+        int minCol = column(x);
+        int minRow = row(y);
+        int maxCol = column(x + width - 1);
+        int maxRow = row(y + height - 1);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                int cell = row * columns + col;
+                int[] slots = cells[cell];
+                for (int i = 0, count = cellCounts[cell]; i < count; i++) {
+                    int slot = slots[i];
+                    if (store.overlaps(slot, x, y, width, height) && filter.test(slot)) {
+                        return slot;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private boolean contains(int slot) {
+        return slot * 4 < spans.length && spans[slot * 4] >= 0;
+    }
+
+    private void setSpan(int slot) {
+        int base = slot * 4;
+        spans[base] = column(store.x[slot]);
+        spans[base + 1] = row(store.y[slot]);
+        spans[base + 2] = column(store.x[slot] + store.width[slot] - 1);
+        spans[base + 3] = row(store.y[slot] + store.height[slot] - 1);
+    }
+
+    private void forEachCell(int slot, boolean add) {
+        int base = slot * 4;
+        for (int row = spans[base + 1]; row <= spans[base + 3]; row++) {
+            for (int col = spans[base]; col <= spans[base + 2]; col++) {
+                int cell = row * columns + col;
+                if (add) {
+                    if (cellCounts[cell] == cells[cell].length) {
+                        cells[cell] = Arrays.copyOf(cells[cell], cellCounts[cell] * 2);
+                    }
+                    cells[cell][cellCounts[cell]++] = slot;
+                } else {
+                    removeFromCell(cell, slot);
+                }
+            }
+        }
+    }
+
+    private void removeFromCell(int cell, int slot) {
+        int[] slots = cells[cell];
+        for (int i = cellCounts[cell] - 1; i >= 0; i--) {
+            if (slots[i] == slot) {
+                // El orden dentro de la celda no importa: se rellena el hueco con el último
+                slots[i] = slots[--cellCounts[cell]];
+                return;
+            }
+        }
+    }
+
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, Math.floorDiv(x, cellSize)));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, Math.floorDiv(y, cellSize)));
+    }
+}
@@ -0,0 +1,140 @@
+package game;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Sprites ya rasterizados para GameRenderer. Cada combinación distinta de aspecto (la clave la
+ * calcula GameRenderer.spriteKey) se dibuja una sola vez con antialiasing en una página de atlas
+ * compatible con la pantalla, colocada por estanterías; después cada entidad es un drawImage de
+ * ese rectángulo. Las imágenes compatibles las acelera Java2D (managed images) sin el manejo de
+ * contenido perdido que exigiría VolatileImage.
+ */
+final class SpriteAtlas {
+    private static final int PAGE_SIZE = 512;
+    // Con más páginas se vacía la caché entera (tamaños de entidad cambiando sin parar)
+    private static final int MAX_PAGES = 8;
+
+    interface Painter {
+        void paint(Graphics2D g, GameObject obj);
+    }
+
+    private static final class Sprite {
+        final BufferedImage page;
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+        // Margen alrededor del rectángulo de la entidad (brazos del jefe, borde de los muros)
+        final int marginX;
+        final int marginY;
+
+        Sprite(BufferedImage page, int x, int y, int width, int height, int marginX, int marginY) {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.marginX = marginX;
+            this.marginY = marginY;
+        }
+    }
+
+    private final Painter painter;
+    private final Map<Long, Sprite> sprites = new HashMap<>();
+    private final List<BufferedImage> pages = new ArrayList<>();
+    private GraphicsConfiguration config;
+    private int shelfX;
+    private int shelfY;
+    private int shelfHeight;
+
+    SpriteAtlas(Painter painter) {
+        this.painter = painter;
+    }
+
+    void draw(Graphics2D g, GameObject obj, long key) {
+        GraphicsConfiguration current = g.getDeviceConfiguration();
+        if (current != config) {
+            // Otra pantalla u otro destino: las páginas anteriores pueden no ser compatibles
+            clear();
+            config = current;
+        }
+        Sprite sprite = sprites.get(key);
+        if (sprite == null) {
+            sprite = rasterize(obj);
+            if (sprite == null) {
+                painter.paint(g, obj);
+                return;
+            }
+            sprites.put(key, sprite);
+        }
+        int dx = obj.getX() - sprite.marginX;
+        int dy = obj.getY() - sprite.marginY;
+        g.drawImage(sprite.page, dx, dy, dx + sprite.width, dy + sprite.height,
+                sprite.x, sprite.y, sprite.x + sprite.width, sprite.y + sprite.height, null);
+    }
+
+    int size() {
+        return sprites.size();
+    }
+
+    private Sprite rasterize(GameObject obj) {
+        int marginX = obj.getWidth() / 4 + 2;
+        int marginY = 2;
+        int width = obj.getWidth() + marginX * 2;
+        int height = obj.getHeight() + marginY * 2;
+        if (width > PAGE_SIZE || height > PAGE_SIZE) {
+            return null;
+        }
+        if (shelfX + width > PAGE_SIZE) {
+            shelfX = 0;
+            shelfY += shelfHeight;
+            shelfHeight = 0;
+        }
+        if (pages.isEmpty() || shelfY + height > PAGE_SIZE) {
+            if (pages.size() == MAX_PAGES) {
+                clear();
+            }
+            pages.add(config.createCompatibleImage(PAGE_SIZE, PAGE_SIZE, Transparency.TRANSLUCENT));
+            shelfX = 0;
+            shelfY = 0;
+            shelfHeight = 0;
+        }
+        BufferedImage page = pages.get(pages.size() - 1);
+        Sprite sprite = new Sprite(page, shelfX, shelfY, width, height, marginX, marginY);
+        shelfX += width;
+        shelfHeight = Math.max(shelfHeight, height);
+
+        // La misma entidad en el origen del hueco, con el mismo código de dibujo que sin caché
+        GameObject template = new GameObject(obj);
+        template.setX(marginX);
+        template.setY(marginY);
+        Graphics2D g = page.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.clipRect(sprite.x, sprite.y, width, height);
+            g.translate(sprite.x, sprite.y);
+            painter.paint(g, template);
+        } finally {
+            g.dispose();
+        }
+        return sprite;
+    }
+
+    private void clear() {
+        sprites.clear();
+        for (BufferedImage page : pages) {
+            page.flush();
+        }
+        pages.clear();
+        shelfX = 0;
+        shelfY = 0;
+        shelfHeight = 0;
+    }
+}
@@ -0,0 +1,191 @@
+package logging;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Registro asíncrono para el servidor. Los hilos del juego y de E/S rellenan su evento con un mensaje
+ * fijo y campos y, al llamar a log(), reservan una entrada de un buffer circular sin bloqueos (una CAS)
+ * y lo copian en ella; un hilo escritor construye las líneas y las escribe por lotes en la consola.
+ * Si el nivel está desactivado o el evento supera su LogLimit no se hace nada más, y si el buffer está lleno el
+ * evento se descarta y se cuenta en lugar de frenar el tick.
+ *
+ * Uso: Log.debug(LIMIT, "Jugador se movió").with("jugador", id).with("x", x).log();
+ * Nivel con -Dspaceinvaders.logLevel=DEBUG|INFO|WARN|ERROR (INFO por defecto, WARN con
+ * -Dspaceinvaders.quiet=true).
+ */
+public final class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final Level LEVEL = parseLevel(System.getProperty("spaceinvaders.logLevel"),
+            Boolean.getBoolean("spaceinvaders.quiet") ? Level.WARN : Level.INFO);
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = 5_000_000L;
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final LogEvent[] ring = new LogEvent[CAPACITY];
+    // Siguiente secuencia a reservar por los productores y siguiente a escribir por el escritor
+    private static final AtomicLong claimed = new AtomicLong();
+    private static volatile long consumed;
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final Object drainLock = new Object();
+    private static final ThreadLocal<LogEvent> events = ThreadLocal.withInitial(LogEvent::new);
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new LogEvent();
+        }
+        Thread writer = new Thread(Log::writeLoop, "Logger");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "Logger-flush"));
+    }
+
+    private Log() {
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= LEVEL.ordinal();
+    }
+
+    public static LogEvent debug(String message) {
+        return at(Level.DEBUG, null, message);
+    }
+
+    public static LogEvent debug(LogLimit limit, String message) {
+        return at(Level.DEBUG, limit, message);
+    }
+
+    public static LogEvent info(String message) {
+        return at(Level.INFO, null, message);
+    }
+
+    public static LogEvent info(LogLimit limit, String message) {
+        return at(Level.INFO, limit, message);
+    }
+
+    public static LogEvent warn(String message) {
+        return at(Level.WARN, null, message);
+    }
+
+    public static LogEvent warn(LogLimit limit, String message) {
+        return at(Level.WARN, limit, message);
+    }
+
+    public static LogEvent error(String message) {
+        return at(Level.ERROR, null, message);
+    }
+
+    public static LogEvent at(Level level, LogLimit limit, String message) {
+        if (!isEnabled(level)) {
+            return LogEvent.DISABLED;
+        }
+        int omitted = limit != null ? limit.acquire() : 0;
+        if (omitted < 0) {
+            return LogEvent.DISABLED;
+        }
+        LogEvent event = events.get();
+        if (event.building) {
+            // Un evento anidado (un campo que registra algo al calcularse) o uno que nunca llegó a log()
+            event = new LogEvent();
+            events.set(event);
+        }
+        event.clear();
+        event.building = true;
+        event.level = level;
+        event.timeMillis = System.currentTimeMillis();
+        event.thread = Thread.currentThread().getName();
+        event.message = message;
+        if (omitted > 0) {
+            event.with("omitidos", omitted);
+        }
+        return event;
+    }
+
+    // Desde LogEvent.log(): el evento ya está completo, así que la entrada se reserva, copia y publica sin esperas
+    static void publish(LogEvent event) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= CAPACITY) {
+                dropped.incrementAndGet();
+                event.clear();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        LogEvent entry = ring[(int) (sequence & MASK)];
+        entry.copyFrom(event);
+        event.clear();
+        entry.published = sequence;
+    }
+
+    // Escribe lo pendiente; lo usa el gancho de apagado para no perder las últimas líneas
+    public static void flush() {
+        drain();
+    }
+
+    private static void writeLoop() {
+        while (true) {
+            if (!drain()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    // Escribe todas las entradas publicadas en orden; una sola escritura por salida y lote
+    private static boolean drain() {
+        synchronized (drainLock) {
+            StringBuilder out = null;
+            StringBuilder err = null;
+            long next = consumed;
+            while (true) {
+                LogEvent event = ring[(int) (next & MASK)];
+                if (event.published != next) {
+                    break;
+                }
+                StringBuilder target;
+                if (event.level.ordinal() >= Level.WARN.ordinal()) {
+                    target = err != null ? err : (err = new StringBuilder(256));
+                } else {
+                    target = out != null ? out : (out = new StringBuilder(1024));
+                }
+                TIME_FORMAT.formatTo(Instant.ofEpochMilli(event.timeMillis), target);
+                target.append(' ').append(event.level).append(" [").append(event.thread).append("] ");
+                event.appendTo(target);
+                target.append(System.lineSeparator());
+                event.clear();
+                consumed = ++next;
+            }
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) {
+                err = err != null ? err : new StringBuilder(128);
+                err.append("Registro: ").append(lost).append(" eventos descartados por buffer lleno")
+                        .append(System.lineSeparator());
+            }
+            if (out != null) {
+                System.out.print(out);
+            }
+            if (err != null) {
+                System.err.print(err);
+            }
+            return out != null || err != null;
+        }
+    }
+
+    private static Level parseLevel(String value, Level fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log level " + value + ", using " + fallback);
+            return fallback;
+        }
+    }
+}
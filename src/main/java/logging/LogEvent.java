@@ -0,0 +1,104 @@
+package logging;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/*
+ * Un evento de Log: mensaje fijo y campos clave=valor (sin concatenar nada). Cada hilo rellena su
+ * propio evento reutilizable y log() lo copia en una entrada del buffer circular, que solo se reserva
+ * entonces; el texto se construye después en el hilo escritor. Un evento que no llega a log() (una
+ * excepción al calcular un campo) no deja ninguna entrada a medias. Un campo con una excepción
+ * añade su traza tras la línea.
+ */
+public final class LogEvent {
+    private static final int MAX_FIELDS = 10;
+
+    // Evento que no se registra (nivel desactivado, límite superado o buffer lleno)
+    static final LogEvent DISABLED = new LogEvent();
+
+    Log.Level level;
+    long timeMillis;
+    String thread;
+    String message;
+    final String[] keys = new String[MAX_FIELDS];
+    final long[] numbers = new long[MAX_FIELDS];
+    final Object[] values = new Object[MAX_FIELDS];
+    int fieldCount;
+
+    // Entradas del buffer: secuencia publicada; el escritor solo lee la entrada cuando coincide con la que espera
+    volatile long published = -1;
+    // Eventos de hilo: entre Log.at y log(); si sigue así en el siguiente Log.at, se usa otro evento
+    boolean building;
+
+    public LogEvent with(String key, long value) {
+        if (this != DISABLED && fieldCount < MAX_FIELDS) {
+            keys[fieldCount] = key;
+            numbers[fieldCount] = value;
+            values[fieldCount] = null;
+            fieldCount++;
+        }
+        return this;
+    }
+
+    public LogEvent with(String key, Object value) {
+        if (this != DISABLED && fieldCount < MAX_FIELDS) {
+            keys[fieldCount] = key;
+            values[fieldCount] = value != null ? value : "null";
+            fieldCount++;
+        }
+        return this;
+    }
+
+    public void log() {
+        if (this != DISABLED && building) {
+            building = false;
+            Log.publish(this);
+        }
+    }
+
+    void copyFrom(LogEvent event) {
+        level = event.level;
+        timeMillis = event.timeMillis;
+        thread = event.thread;
+        message = event.message;
+        fieldCount = event.fieldCount;
+        System.arraycopy(event.keys, 0, keys, 0, fieldCount);
+        System.arraycopy(event.numbers, 0, numbers, 0, fieldCount);
+        System.arraycopy(event.values, 0, values, 0, fieldCount);
+    }
+
+    void appendTo(StringBuilder line) {
+        line.append(message);
+        Throwable error = null;
+        for (int i = 0; i < fieldCount; i++) {
+            if (values[i] instanceof Throwable) {
+                error = (Throwable) values[i];
+            }
+            line.append(' ').append(keys[i]).append('=');
+            Object value = values[i];
+            if (value == null) {
+                line.append(numbers[i]);
+            } else {
+                String text = value.toString();
+                if (text.indexOf(' ') >= 0) {
+                    line.append('"').append(text).append('"');
+                } else {
+                    line.append(text);
+                }
+            }
+        }
+        if (error != null) {
+            StringWriter trace = new StringWriter();
+            error.printStackTrace(new PrintWriter(trace));
+            line.append(System.lineSeparator()).append(trace.toString().stripTrailing());
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < fieldCount; i++) {
+            values[i] = null;
+        }
+        fieldCount = 0;
+        message = null;
+        thread = null;
+    }
+}
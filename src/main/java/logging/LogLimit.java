@@ -0,0 +1,50 @@
+package logging;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Límite para eventos frecuentes (movimientos, disparos, impactos): como mucho N por segundo,
+ * o uno de cada N. Los eventos descartados se cuentan y el siguiente que pasa lleva el campo
+ * omitidos=N, así no se pierde la información de cuántos hubo.
+ */
+public final class LogLimit {
+    private final int perSecond;
+    private final int sampleEvery;
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicInteger inWindow = new AtomicInteger();
+    private final AtomicLong seen = new AtomicLong();
+    private final AtomicInteger suppressed = new AtomicInteger();
+
+    private LogLimit(int perSecond, int sampleEvery) {
+        this.perSecond = perSecond;
+        this.sampleEvery = sampleEvery;
+    }
+
+    public static LogLimit perSecond(int events) {
+        return new LogLimit(Math.max(1, events), 1);
+    }
+
+    public static LogLimit everyNth(int events) {
+        return new LogLimit(Integer.MAX_VALUE, Math.max(1, events));
+    }
+
+    // -1 si el evento se descarta; si no, cuántos se descartaron desde el último registrado
+    int acquire() {
+        if (sampleEvery > 1 && seen.getAndIncrement() % sampleEvery != 0) {
+            suppressed.incrementAndGet();
+            return -1;
+        }
+        if (perSecond != Integer.MAX_VALUE) {
+            long second = System.nanoTime() / 1_000_000_000L;
+            long current = window.get();
+            if (current != second && window.compareAndSet(current, second)) {
+                inWindow.set(0);
+            }
+            if (inWindow.incrementAndGet() > perSecond) {
+                suppressed.incrementAndGet();
+                return -1;
+            }
+        }
+        return suppressed.getAndSet(0);
+    }
+}
@@ -0,0 +1,48 @@
+package messages;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Estado inmutable de un tick listo para enviar: cada variante se codifica como mucho una vez
+public final class EncodedSnapshot {
+    private final SnapshotEncoder encoder;
+    private final Snapshot snapshot;
+    private final ConcurrentMap<Integer, FrameBytes> binaryFrames = new ConcurrentHashMap<>();
+    private volatile FrameBytes serializedFrame;
+
+    EncodedSnapshot(SnapshotEncoder encoder, Snapshot snapshot) {
+        this.encoder = encoder;
+        this.snapshot = snapshot;
+    }
+
+    // Delta contra el último snapshot confirmado por el cliente, o completo si ya no está en el historial
+    public FrameBytes binaryFrame(int ackedSequence) {
+        Snapshot baseline = encoder.baseline(ackedSequence);
+        int key = baseline != null ? baseline.getSequence() : -1;
+        return binaryFrames.computeIfAbsent(key, k -> SnapshotEncoder.encodeBinary(snapshot, baseline));
+    }
+
+    public FrameBytes serializedFrame() {
+        FrameBytes frame = serializedFrame;
+        if (frame == null) {
+            synchronized (this) {
+                frame = serializedFrame;
+                if (frame == null) {
+                    // Se reconstruye desde el snapshot: los escritores nunca tocan los GameObject vivos
+                    Message message = new Message("UPDATE_STATE");
+                    message.setObjects(snapshot.toGameObjects());
+                    message.setGameOver(snapshot.isGameOver());
+                    message.setPlayerScores(new HashMap<>(snapshot.getPlayerScores()));
+                    message.setInputSequences(new HashMap<>(snapshot.getInputSequences()));
+                    frame = encoder.encodeSerialized(message);
+                    serializedFrame = frame;
+                }
+            }
+        }
+        return frame;
+    }
+
+    public int getSequence() {
+        return snapshot.getSequence();
+    }
+}
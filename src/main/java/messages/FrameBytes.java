@@ -0,0 +1,39 @@
+package messages;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// Frame ya codificado, compartido entre todas las conexiones que lo envían
+public final class FrameBytes {
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+    private final int savedBytes;
+
+    FrameBytes(byte[] bytes) {
+        this(bytes, 0);
+    }
+
+    FrameBytes(byte[] bytes, int savedBytes) {
+        this.bytes = bytes;
+        this.buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        this.savedBytes = savedBytes;
+    }
+
+    // Cada llamada devuelve una vista independiente (posición propia) sobre los mismos bytes
+    public ByteBuffer buffer() {
+        return buffer.duplicate();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    // Estimación de lo que habría ocupado de más sin el filtrado de relevancia (SnapshotCodec.encode)
+    public int getSavedBytes() {
+        return savedBytes;
+    }
+}
@@ -16,6 +16,9 @@ public class Message implements Serializable {
     private String input; // e.g., "LEFT", "RIGHT", "SHOOT", "RESTART"
     private int playerId;
     private Map<Integer, Integer> playerScores = new HashMap<>(); // Individual player scores
+    private int inputSequence; // PLAYER_INPUT: número de la entrada en el cliente (0 = sin numerar)
+    private int inputs; // PLAYER_INPUT: máscara GameState.INPUT_* muestreada (0 = usar input)
+    private Map<Integer, Integer> inputSequences = new HashMap<>(); // UPDATE_STATE: última entrada aplicada por jugador
 
     public Message(String action) {
         this.action = action;
@@ -81,12 +84,39 @@ public class Message implements Serializable {
         return playerScores;
     }
 
+    public void setInputs(int inputs) {
+        this.inputs = inputs;
+    }
+
+    public int getInputs() {
+        return inputs;
+    }
+
+    public void setInputSequence(int inputSequence) {
+        this.inputSequence = inputSequence;
+    }
+
+    public int getInputSequence() {
+        return inputSequence;
+    }
+
+    public void setInputSequences(Map<Integer, Integer> inputSequences) {
+        this.inputSequences = inputSequences;
+    }
+
+    // Null si el mensaje viene de un servidor que no numera las entradas
+    public Map<Integer, Integer> getInputSequences() {
+        return inputSequences;
+    }
+
     @Override
     public String toString() {
         return "Mensage{" +
                 "accion='" + action + '\'' +
                 ", playerId=" + playerId +
                 ", input='" + input + '\'' +
+                ", inputs=" + inputs +
+                ", inputSequence=" + inputSequence +
                 ", objects.size=" + (objects != null ? objects.size() : 0) +
                 ", score=" + score +
                 ", gameOver=" + gameOver +
@@ -0,0 +1,148 @@
+package messages;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public final class Protocol {
+    // Cabecera del handshake: "SINV" + versión + protocolo preferido
+    public static final int MAGIC = 0x53494E56;
+    public static final byte VERSION = 4;
+    // Desde la versión 2 el handshake incluye la sala: operación + nombre (writeUTF)
+    public static final byte ROOMS_VERSION = 2;
+    // Desde la versión 3 los snapshots binarios llevan ids de entidad
+    public static final byte ENTITY_IDS_VERSION = 3;
+    // Desde la versión 4 los recuentos de puntuaciones y entradas van en short y la cabecera es un byte de
+    // indicadores (SnapshotCodec); a las anteriores se les sirve SERIALIZED
+    public static final byte SNAPSHOT_FLAGS_VERSION = 4;
+
+    public static final byte SERIALIZED = 1; // Message via ObjectOutputStream (legacy)
+    public static final byte BINARY = 2;     // Frames binarios con snapshots delta
+
+    // Primeros bytes de un ObjectOutputStream: permiten detectar clientes antiguos
+    public static final int JAVA_STREAM_MAGIC = 0xACED;
+
+    public static final byte FRAME_SNAPSHOT = 1;
+    public static final byte FRAME_INPUT = 2;
+    public static final byte FRAME_ACK = 3;
+    public static final byte FRAME_PING = 4;
+    // Estado de las teclas muestreado por el cliente: byte máscara GameState.INPUT_*, int secuencia
+    public static final byte FRAME_INPUT_STATE = 5;
+
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+
+    public static final byte ROOM_JOIN = 0;   // unirse a la sala por nombre, creándola si no existe
+    public static final byte ROOM_CREATE = 1; // crear una sala nueva con nombre generado por el servidor
+    public static final String DEFAULT_ROOM = "default";
+    public static final int MAX_ROOM_NAME = 32;
+
+    // Los códigos de tipo y color de entidad son los de game.EntityTypes
+    static final String[] INPUTS = {"LEFT", "RIGHT", "SHOOT", "RESTART"};
+
+    private Protocol() {}
+
+    public static byte preferredProtocol() {
+        return "serialized".equalsIgnoreCase(System.getProperty("spaceinvaders.protocol")) ? SERIALIZED : BINARY;
+    }
+
+    // Protocolo que el servidor responde en el handshake a lo que pide el cliente
+    public static byte negotiate(byte version, byte requested) {
+        return requested == BINARY && version >= SNAPSHOT_FLAGS_VERSION && preferredProtocol() == BINARY
+                ? BINARY : SERIALIZED;
+    }
+
+    public static int inputCode(String input) {
+        return indexOf(INPUTS, input, "input");
+    }
+
+    public static String inputName(int code) throws IOException {
+        if (code < 0 || code >= INPUTS.length) {
+            throw new IOException("Unknown input code: " + code);
+        }
+        return INPUTS[code];
+    }
+
+    // Nombre vacío = sala por defecto; solo letras, dígitos, '-' y '_' para que quepa en un byte por carácter
+    public static String checkRoomName(String name) throws IOException {
+        if (name == null || name.isEmpty()) {
+            return DEFAULT_ROOM;
+        }
+        if (name.length() > MAX_ROOM_NAME) {
+            throw new IOException("Room name too long: " + name.length());
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                throw new IOException("Invalid room name: " + name);
+            }
+        }
+        return name;
+    }
+
+    public static void writeRoomRequest(DataOutputStream out, byte operation, String room) throws IOException {
+        out.writeByte(operation);
+        out.writeUTF(room == null ? "" : room);
+    }
+
+    private static int indexOf(String[] table, String value, String what) {
+        for (int i = 0; i < table.length; i++) {
+            if (value == null ? table[i] == null : value.equals(table[i])) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No wire code for " + what + ": " + value);
+    }
+
+    public static void writeFrame(DataOutputStream out, byte type, byte[] payload, int length) throws IOException {
+        out.writeInt(length + 1);
+        out.writeByte(type);
+        out.write(payload, 0, length);
+    }
+
+    public static void writeInputState(DataOutputStream out, int inputs, int sequence) throws IOException {
+        out.writeInt(6);
+        out.writeByte(FRAME_INPUT_STATE);
+        out.writeByte(inputs);
+        out.writeInt(sequence);
+    }
+
+    public static void writeAck(DataOutputStream out, int sequence) throws IOException {
+        out.writeInt(5);
+        out.writeByte(FRAME_ACK);
+        out.writeInt(sequence);
+    }
+
+    public static void writePing(DataOutputStream out) throws IOException {
+        out.writeInt(1);
+        out.writeByte(FRAME_PING);
+    }
+
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int frameLength = in.readInt();
+        if (frameLength < 1 || frameLength > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + frameLength);
+        }
+        byte type = in.readByte();
+        byte[] payload = new byte[frameLength - 1];
+        in.readFully(payload);
+        return new Frame(type, payload);
+    }
+
+    public static final class Frame {
+        private final byte type;
+        private final byte[] payload;
+
+        Frame(byte type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public DataInputStream payload() {
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package messages;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import game.EntityType;
+import game.EntityTypes;
+import game.EntityVisitor;
+import game.GameObject;
+import game.GameState;
+import game.GameStateView;
+
+// Copia inmutable del estado en un tick, con los campos de cada objeto en un int[] plano.
+// Solo guarda las entidades que el cliente dibuja: las naves y lo que sigue vivo y sin usar.
+public final class Snapshot {
+    static final int X = 0;
+    static final int Y = 1;
+    static final int WIDTH = 2;
+    static final int HEIGHT = 3;
+    static final int TYPE = 4;
+    static final int COLOR = 5;
+    static final int FLAGS = 6;
+    static final int BLOCK_TYPE = 7;
+    static final int HEALTH = 8;
+    static final int PLAYER_ID = 9;
+    static final int ID = 10;
+    static final int STRIDE = 11;
+
+    static final int FLAG_ALIVE = 1;
+    static final int FLAG_USED = 2;
+
+    private final int sequence;
+    private final boolean gameOver;
+    private final int entityCount;
+    private final int[] entities;
+    private final Map<Integer, Integer> playerScores;
+    private final Map<Integer, Integer> inputSequences;
+    // Índice id -> posición (direccionamiento abierto); se construye la primera vez que se consulta
+    private volatile int[] idTable;
+    // Entidades descartadas al capturar (alienígenas y muros destruidos, balas usadas)
+    private final int droppedCount;
+    // Tick del servidor en que se capturó y duración del tick en microsegundos; 0 y 0 si no se conocen
+    private final int tick;
+    private final int tickMicros;
+
+    Snapshot(int sequence, boolean gameOver, int entityCount, int[] entities, Map<Integer, Integer> playerScores,
+             Map<Integer, Integer> inputSequences, int tick, int tickMicros) {
+        this(sequence, gameOver, entityCount, entities, playerScores, inputSequences, 0, tick, tickMicros);
+    }
+
+    private Snapshot(int sequence, boolean gameOver, int entityCount, int[] entities, Map<Integer, Integer> playerScores,
+                     Map<Integer, Integer> inputSequences, int droppedCount, int tick, int tickMicros) {
+        this.sequence = sequence;
+        this.gameOver = gameOver;
+        this.entityCount = entityCount;
+        this.entities = entities;
+        this.playerScores = Collections.unmodifiableMap(playerScores);
+        this.inputSequences = Collections.unmodifiableMap(inputSequences);
+        this.droppedCount = droppedCount;
+        this.tick = tick;
+        this.tickMicros = tickMicros;
+    }
+
+    static boolean isRelevant(byte type, boolean alive, boolean used) {
+        return type == EntityTypes.SHIP || (alive && !used);
+    }
+
+    public static Snapshot capture(int sequence, List<GameObject> objects, boolean gameOver,
+                                   Map<Integer, Integer> playerScores, Map<Integer, Integer> inputSequences) {
+        int[] entities = new int[objects.size() * STRIDE];
+        int offset = 0;
+        for (GameObject obj : objects) {
+            byte type = EntityTypes.typeCode(obj.getType());
+            if (!isRelevant(type, obj.isAlive(), obj.isUsed())) {
+                continue;
+            }
+            entities[offset + X] = obj.getX();
+            entities[offset + Y] = obj.getY();
+            entities[offset + WIDTH] = obj.getWidth();
+            entities[offset + HEIGHT] = obj.getHeight();
+            entities[offset + TYPE] = type;
+            entities[offset + COLOR] = EntityTypes.colorCode(obj.getColor());
+            entities[offset + FLAGS] = (obj.isAlive() ? FLAG_ALIVE : 0) | (obj.isUsed() ? FLAG_USED : 0);
+            entities[offset + BLOCK_TYPE] = obj.getBlockType();
+            entities[offset + HEALTH] = obj.getHealth();
+            entities[offset + PLAYER_ID] = obj.getPlayerId();
+            entities[offset + ID] = obj.getId();
+            offset += STRIDE;
+        }
+        int count = offset / STRIDE;
+        return new Snapshot(sequence, gameOver, count, entities, new HashMap<>(playerScores),
+                inputSequences != null ? new HashMap<>(inputSequences) : new HashMap<>(), objects.size() - count, 0, 0);
+    }
+
+    // Lee el último estado publicado por GameState, sin pasar por GameObject; entidades, puntuaciones
+    // y secuencias de entrada salen de la misma vista y por tanto del mismo tick
+    public static Snapshot capture(int sequence, GameState state) {
+        GameStateView view = state.view();
+        Collector collector = new Collector(view.getEntityCount());
+        view.forEachEntity(collector);
+        int[] entities = collector.count * STRIDE == collector.entities.length
+                ? collector.entities : Arrays.copyOf(collector.entities, collector.count * STRIDE);
+        return new Snapshot(sequence, view.isGameOver(), collector.count, entities, view.getPlayerScores(),
+                view.getInputSequences(), collector.dropped, (int) view.getTick(), view.getTickMicros());
+    }
+
+    private static final class Collector implements EntityVisitor {
+        int[] entities;
+        int count;
+        int dropped;
+
+        Collector(int expected) {
+            entities = new int[expected * STRIDE];
+        }
+
+        @Override
+        public void visit(int id, int x, int y, int width, int height, byte type, byte color,
+                          boolean alive, boolean used, int blockType, int health, int playerId) {
+            if (!isRelevant(type, alive, used)) {
+                dropped++;
+                return;
+            }
+            int offset = count * STRIDE;
+            if (offset + STRIDE > entities.length) {
+                entities = Arrays.copyOf(entities, Math.max(STRIDE, entities.length * 2));
+            }
+            entities[offset + X] = x;
+            entities[offset + Y] = y;
+            entities[offset + WIDTH] = width;
+            entities[offset + HEIGHT] = height;
+            entities[offset + TYPE] = type;
+            entities[offset + COLOR] = color;
+            entities[offset + FLAGS] = (alive ? FLAG_ALIVE : 0) | (used ? FLAG_USED : 0);
+            entities[offset + BLOCK_TYPE] = blockType;
+            entities[offset + HEALTH] = health;
+            entities[offset + PLAYER_ID] = playerId;
+            entities[offset + ID] = id;
+            count++;
+        }
+    }
+
+    public ArrayList<GameObject> toGameObjects() {
+        ArrayList<GameObject> objects = new ArrayList<>(entityCount);
+        for (int i = 0; i < entityCount; i++) {
+            int offset = i * STRIDE;
+            GameObject obj = new GameObject(entities[offset + X], entities[offset + Y],
+                    entities[offset + WIDTH], entities[offset + HEIGHT],
+                    EntityType.fromCode(entities[offset + TYPE]), entities[offset + PLAYER_ID]);
+            obj.setColorCode((byte) entities[offset + COLOR]);
+            obj.setAlive((entities[offset + FLAGS] & FLAG_ALIVE) != 0);
+            obj.setUsed((entities[offset + FLAGS] & FLAG_USED) != 0);
+            obj.setBlockType(entities[offset + BLOCK_TYPE]);
+            obj.setHealth(entities[offset + HEALTH]);
+            obj.setId(entities[offset + ID]);
+            objects.add(obj);
+        }
+        return objects;
+    }
+
+    // Lectura de campos sin crear GameObject (bots de carga, predicción del cliente)
+    public int getX(int entity) {
+        return entities[entity * STRIDE + X];
+    }
+
+    public int getY(int entity) {
+        return entities[entity * STRIDE + Y];
+    }
+
+    public byte getType(int entity) {
+        return (byte) entities[entity * STRIDE + TYPE];
+    }
+
+    public int getPlayerId(int entity) {
+        return entities[entity * STRIDE + PLAYER_ID];
+    }
+
+    public int getId(int entity) {
+        return entities[entity * STRIDE + ID];
+    }
+
+    // Posición de la entidad con ese id, o -1 si no está en este snapshot
+    public int indexOf(int id) {
+        int[] table = idTable;
+        if (table == null) {
+            table = buildIdTable();
+            idTable = table;
+        }
+        int mask = table.length - 1;
+        for (int h = mix(id) & mask; table[h] != 0; h = (h + 1) & mask) {
+            int entity = table[h] - 1;
+            if (entities[entity * STRIDE + ID] == id) {
+                return entity;
+            }
+        }
+        return -1;
+    }
+
+    // Cada casilla guarda posición + 1 (0 = vacía); al menos la mitad queda libre
+    private int[] buildIdTable() {
+        int[] table = new int[Math.max(4, Integer.highestOneBit(Math.max(1, entityCount)) << 2)];
+        int mask = table.length - 1;
+        for (int i = 0; i < entityCount; i++) {
+            int h = mix(entities[i * STRIDE + ID]) & mask;
+            while (table[h] != 0) {
+                h = (h + 1) & mask;
+            }
+            table[h] = i + 1;
+        }
+        return table;
+    }
+
+    private static int mix(int id) {
+        return id * 0x9E3779B9;
+    }
+
+    // Índice de la nave del jugador, o -1 si no tiene
+    public int findShip(int playerId) {
+        for (int i = 0; i < entityCount; i++) {
+            int offset = i * STRIDE;
+            if (entities[offset + TYPE] == EntityTypes.SHIP && entities[offset + PLAYER_ID] == playerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int field(int entity, int field) {
+        return entities[entity * STRIDE + field];
+    }
+
+    int[] entities() {
+        return entities;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    int getTick() {
+        return tick;
+    }
+
+    int getTickMicros() {
+        return tickMicros;
+    }
+
+    // Instante del servidor (tick por duración del tick) en nanosegundos, o -1 si no se conoce (snapshot capturado de un Message)
+    public long getServerTimeNanos() {
+        return tickMicros > 0 ? (long) tick * tickMicros * 1000 : -1;
+    }
+
+    int getDroppedCount() {
+        return droppedCount;
+    }
+
+    public Map<Integer, Integer> getPlayerScores() {
+        return playerScores;
+    }
+
+    // Última entrada numerada aplicada de cada jugador presente cuando se capturó el estado
+    public Map<Integer, Integer> getInputSequences() {
+        return inputSequences;
+    }
+}
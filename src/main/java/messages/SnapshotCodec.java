@@ -0,0 +1,245 @@
+package messages;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import game.EntityTypes;
+
+/*
+ * Formato de un frame FRAME_SNAPSHOT:
+ *   int seq, int baselineSeq (-1 = completo), byte flags (FLAG_GAME_OVER, FLAG_SCORES_UNCHANGED),
+ *   si no FLAG_SCORES_UNCHANGED: short numScores, numScores x (short playerId, int score),
+ *   short numEntities, entradas hasta cubrir numEntities:
+ *     byte mask, [int id si MASK_ID], campos marcados en mask
+ *     byte 0, byte n: n entidades seguidas iguales a las de la misma posición en la base
+ *   short numInputs, numInputs x (short playerId, int lastInputSequence)
+ *   int tick, int tickMicros (instante del servidor del estado; 0, 0 si no se conoce)
+ * Los recuentos son short sin signo; el codificador falla en lugar de truncarlos. La vida va en un byte
+ * sin signo, limitada a 0..EntityTypes.MAX_HEALTH.
+ * Cada objeto se compara con el del mismo id en el snapshot base y solo se envían los grupos de
+ * campos que cambiaron. Si el id coincide con el de la misma posición en la base (el caso normal)
+ * no se envía; si no, MASK_ID lo acompaña y la base es la entidad con ese id, si existe.
+ * Los muros y el resto de entidades quietas solo viajan completos en el primer snapshot; después
+ * van dentro de una racha sin cambios. Los pares de versiones anteriores del handshake reciben
+ * SERIALIZED (Protocol.SNAPSHOT_FLAGS_VERSION), así que todos los campos son obligatorios: un frame
+ * corto falla con EOFException.
+ */
+public final class SnapshotCodec {
+    private static final int MASK_X = 1;          // short
+    private static final int MASK_Y = 1 << 1;     // short
+    private static final int MASK_SIZE = 1 << 2;  // short width, short height
+    private static final int MASK_LOOK = 1 << 3;  // byte type, byte color, byte blockType
+    private static final int MASK_FLAGS = 1 << 4; // byte
+    private static final int MASK_HEALTH = 1 << 5; // byte
+    private static final int MASK_OWNER = 1 << 6; // short playerId
+    private static final int MASK_ALL = (1 << 7) - 1;
+    private static final int MASK_ID = 1 << 7;     // int id; la entidad no es la de la misma posición en la base
+    private static final int FLAG_GAME_OVER = 1;
+    private static final int FLAG_SCORES_UNCHANGED = 1 << 1; // las puntuaciones son las del snapshot base
+    private static final int MAX_COUNT = 0xFFFF;
+    private static final int MAX_RUN = 0xFF;
+    // Lo que ocupa una entidad completa con su id, para estimar el ahorro de no enviarla
+    private static final int FULL_ENTITY_BYTES = 20;
+
+    private SnapshotCodec() {}
+
+    // Devuelve una estimación de los bytes ahorrados frente a enviar todas las entidades y puntuaciones
+    public static int encode(Snapshot current, Snapshot baseline, DataOutput out) throws IOException {
+        out.writeInt(current.getSequence());
+        out.writeInt(baseline != null ? baseline.getSequence() : -1);
+        Map<Integer, Integer> scores = current.getPlayerScores();
+        boolean scoresUnchanged = baseline != null && scores.equals(baseline.getPlayerScores());
+        out.writeByte((current.isGameOver() ? FLAG_GAME_OVER : 0) | (scoresUnchanged ? FLAG_SCORES_UNCHANGED : 0));
+
+        // Entidades descartadas: en un delta habrían ido como máscara vacía, en uno completo enteras
+        int saved = current.getDroppedCount() * (baseline != null ? 1 : FULL_ENTITY_BYTES);
+
+        if (scoresUnchanged) {
+            saved += 2 + scores.size() * 6;
+        } else {
+            out.writeShort(checkCount(scores.size(), "scores"));
+            for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+                out.writeShort(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+
+        int count = current.getEntityCount();
+        int baselineCount = baseline != null ? baseline.getEntityCount() : 0;
+        out.writeShort(checkCount(count, "entities"));
+        int i = 0;
+        while (i < count) {
+            if (isUnchanged(current, baseline, baselineCount, i)) {
+                int run = 1;
+                while (run < MAX_RUN && i + run < count && isUnchanged(current, baseline, baselineCount, i + run)) {
+                    run++;
+                }
+                out.writeByte(0);
+                out.writeByte(run);
+                saved += run - 2;
+                i += run;
+                continue;
+            }
+            int id = current.field(i, Snapshot.ID);
+            int base = i < baselineCount && baseline.field(i, Snapshot.ID) == id ? i : -1;
+            int idFlag = 0;
+            if (base < 0) {
+                idFlag = MASK_ID;
+                base = baseline != null ? baseline.indexOf(id) : -1;
+            }
+            int mask = base >= 0 ? changedFields(current, baseline, i, base) : MASK_ALL;
+            out.writeByte(mask | idFlag);
+            if (idFlag != 0) out.writeInt(id);
+            if ((mask & MASK_X) != 0) out.writeShort(current.field(i, Snapshot.X));
+            if ((mask & MASK_Y) != 0) out.writeShort(current.field(i, Snapshot.Y));
+            if ((mask & MASK_SIZE) != 0) {
+                out.writeShort(current.field(i, Snapshot.WIDTH));
+                out.writeShort(current.field(i, Snapshot.HEIGHT));
+            }
+            if ((mask & MASK_LOOK) != 0) {
+                out.writeByte(current.field(i, Snapshot.TYPE));
+                out.writeByte(current.field(i, Snapshot.COLOR));
+                out.writeByte(current.field(i, Snapshot.BLOCK_TYPE));
+            }
+            if ((mask & MASK_FLAGS) != 0) out.writeByte(current.field(i, Snapshot.FLAGS));
+            if ((mask & MASK_HEALTH) != 0) {
+                out.writeByte(Math.max(0, Math.min(EntityTypes.MAX_HEALTH, current.field(i, Snapshot.HEALTH))));
+            }
+            if ((mask & MASK_OWNER) != 0) out.writeShort(current.field(i, Snapshot.PLAYER_ID));
+            i++;
+        }
+
+        Map<Integer, Integer> inputSequences = current.getInputSequences();
+        out.writeShort(checkCount(inputSequences.size(), "input sequences"));
+        for (Map.Entry<Integer, Integer> entry : inputSequences.entrySet()) {
+            out.writeShort(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(current.getTick());
+        out.writeInt(current.getTickMicros());
+        return saved;
+    }
+
+    private static boolean isUnchanged(Snapshot current, Snapshot baseline, int baselineCount, int i) {
+        return i < baselineCount && baseline.field(i, Snapshot.ID) == current.field(i, Snapshot.ID) &&
+                changedFields(current, baseline, i, i) == 0;
+    }
+
+    private static int changedFields(Snapshot current, Snapshot baseline, int i, int base) {
+        int mask = 0;
+        if (current.field(i, Snapshot.X) != baseline.field(base, Snapshot.X)) mask |= MASK_X;
+        if (current.field(i, Snapshot.Y) != baseline.field(base, Snapshot.Y)) mask |= MASK_Y;
+        if (current.field(i, Snapshot.WIDTH) != baseline.field(base, Snapshot.WIDTH) ||
+                current.field(i, Snapshot.HEIGHT) != baseline.field(base, Snapshot.HEIGHT)) mask |= MASK_SIZE;
+        if (current.field(i, Snapshot.TYPE) != baseline.field(base, Snapshot.TYPE) ||
+                current.field(i, Snapshot.COLOR) != baseline.field(base, Snapshot.COLOR) ||
+                current.field(i, Snapshot.BLOCK_TYPE) != baseline.field(base, Snapshot.BLOCK_TYPE)) mask |= MASK_LOOK;
+        if (current.field(i, Snapshot.FLAGS) != baseline.field(base, Snapshot.FLAGS)) mask |= MASK_FLAGS;
+        if (current.field(i, Snapshot.HEALTH) != baseline.field(base, Snapshot.HEALTH)) mask |= MASK_HEALTH;
+        if (current.field(i, Snapshot.PLAYER_ID) != baseline.field(base, Snapshot.PLAYER_ID)) mask |= MASK_OWNER;
+        return mask;
+    }
+
+    // baselines devuelve el snapshot recibido con esa secuencia, o null si ya no está disponible
+    public static Snapshot decode(DataInput in, IntFunction<Snapshot> baselines) throws IOException {
+        int sequence = in.readInt();
+        int baselineSeq = in.readInt();
+        int flags = in.readUnsignedByte();
+        boolean gameOver = (flags & FLAG_GAME_OVER) != 0;
+
+        Snapshot baseline = null;
+        if (baselineSeq >= 0) {
+            baseline = baselines.apply(baselineSeq);
+            if (baseline == null) {
+                throw new IOException("Missing baseline snapshot " + baselineSeq + " for delta " + sequence);
+            }
+        }
+        int baselineCount = baseline != null ? baseline.getEntityCount() : 0;
+
+        Map<Integer, Integer> scores = new HashMap<>();
+        int numScores = 0;
+        if ((flags & FLAG_SCORES_UNCHANGED) != 0) {
+            if (baseline == null) {
+                throw new IOException("Unchanged scores without baseline in snapshot " + sequence);
+            }
+            scores.putAll(baseline.getPlayerScores());
+        } else {
+            numScores = in.readUnsignedShort();
+        }
+        for (int i = 0; i < numScores; i++) {
+            int playerId = in.readShort();
+            scores.put(playerId, in.readInt());
+        }
+
+        int count = in.readUnsignedShort();
+        int[] entities = new int[count * Snapshot.STRIDE];
+        for (int i = 0; i < count; i++) {
+            int mask = in.readUnsignedByte();
+            int offset = i * Snapshot.STRIDE;
+            if (mask == 0) {
+                int run = in.readUnsignedByte();
+                if (run == 0 || i + run > count || i + run > baselineCount) {
+                    throw new IOException("Invalid unchanged run of " + run + " at entity " + i);
+                }
+                System.arraycopy(baseline.entities(), offset, entities, offset, run * Snapshot.STRIDE);
+                i += run - 1;
+                continue;
+            }
+            int base;
+            if ((mask & MASK_ID) != 0) {
+                mask &= ~MASK_ID;
+                int id = in.readInt();
+                base = baseline != null ? baseline.indexOf(id) : -1;
+                entities[offset + Snapshot.ID] = id;
+            } else {
+                base = i < baselineCount ? i : -1;
+            }
+            if (base >= 0) {
+                System.arraycopy(baseline.entities(), base * Snapshot.STRIDE, entities, offset, Snapshot.STRIDE);
+            } else if (mask != MASK_ALL) {
+                throw new IOException("Entity " + i + " has no baseline but is not fully encoded");
+            }
+            if ((mask & MASK_X) != 0) entities[offset + Snapshot.X] = in.readShort();
+            if ((mask & MASK_Y) != 0) entities[offset + Snapshot.Y] = in.readShort();
+            if ((mask & MASK_SIZE) != 0) {
+                entities[offset + Snapshot.WIDTH] = in.readShort();
+                entities[offset + Snapshot.HEIGHT] = in.readShort();
+            }
+            if ((mask & MASK_LOOK) != 0) {
+                entities[offset + Snapshot.TYPE] = checkCode(in.readUnsignedByte(), EntityTypes.TYPE_COUNT, "type");
+                entities[offset + Snapshot.COLOR] = checkCode(in.readUnsignedByte(), EntityTypes.COLOR_COUNT, "color");
+                entities[offset + Snapshot.BLOCK_TYPE] = in.readUnsignedByte();
+            }
+            if ((mask & MASK_FLAGS) != 0) entities[offset + Snapshot.FLAGS] = in.readUnsignedByte();
+            if ((mask & MASK_HEALTH) != 0) entities[offset + Snapshot.HEALTH] = in.readUnsignedByte();
+            if ((mask & MASK_OWNER) != 0) entities[offset + Snapshot.PLAYER_ID] = in.readShort();
+        }
+
+        Map<Integer, Integer> inputSequences = new HashMap<>();
+        int numInputs = in.readUnsignedShort();
+        for (int i = 0; i < numInputs; i++) {
+            int playerId = in.readShort();
+            inputSequences.put(playerId, in.readInt());
+        }
+        int tick = in.readInt();
+        int tickMicros = in.readInt();
+        return new Snapshot(sequence, gameOver, count, entities, scores, inputSequences, tick, tickMicros);
+    }
+
+    private static int checkCount(int count, String what) throws IOException {
+        if (count > MAX_COUNT) {
+            throw new IOException("Too many " + what + " for a snapshot: " + count);
+        }
+        return count;
+    }
+
+    private static int checkCode(int code, int limit, String what) throws IOException {
+        if (code >= limit) {
+            throw new IOException("Unknown " + what + " code: " + code);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,95 @@
+package messages;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import game.GameState;
+
+// Convierte cada estado en un EncodedSnapshot una sola vez; las conexiones comparten sus bytes
+public class SnapshotEncoder {
+    private final Snapshot[] history = new Snapshot[32];
+    private int nextSequence = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ByteArrayOutputStream serializedBuffer = new ByteArrayOutputStream();
+    private final ObjectOutputStream serializedOut;
+
+    public SnapshotEncoder() {
+        try {
+            serializedOut = new ObjectOutputStream(serializedBuffer);
+            serializedOut.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public EncodedSnapshot encode(Message message) {
+        lock.lock();
+        try {
+            return record(Snapshot.capture(nextSequence++, message.getObjects(),
+                    message.isGameOver(), message.getPlayerScores(), message.getInputSequences()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Camino del servidor: captura directamente de GameState, sin construir la lista de GameObject
+    public EncodedSnapshot encode(GameState state) {
+        lock.lock();
+        try {
+            return record(Snapshot.capture(nextSequence++, state));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private EncodedSnapshot record(Snapshot snapshot) {
+        history[snapshot.getSequence() % history.length] = snapshot;
+        return new EncodedSnapshot(this, snapshot);
+    }
+
+    Snapshot baseline(int sequence) {
+        if (sequence < 0) {
+            return null;
+        }
+        lock.lock();
+        try {
+            Snapshot candidate = history[sequence % history.length];
+            return candidate != null && candidate.getSequence() == sequence ? candidate : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static FrameBytes encodeBinary(Snapshot snapshot, Snapshot baseline) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+            int saved = SnapshotCodec.encode(snapshot, baseline, new DataOutputStream(payload));
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.size() + 5);
+            Protocol.writeFrame(new DataOutputStream(frame), Protocol.FRAME_SNAPSHOT,
+                    payload.toByteArray(), payload.size());
+            return new FrameBytes(frame.toByteArray(), saved);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Produce TC_RESET + el objeto, válido en cualquier ObjectInputStream ya inicializado
+    FrameBytes encodeSerialized(Message message) {
+        lock.lock();
+        try {
+            serializedBuffer.reset();
+            serializedOut.reset();
+            serializedOut.writeObject(message);
+            serializedOut.flush();
+            return new FrameBytes(serializedBuffer.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
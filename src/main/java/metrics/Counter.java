@@ -0,0 +1,34 @@
+package metrics;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Contador monótono; LongAdder para que varios hilos de E/S o de simulación no compitan por una línea de caché
+public final class Counter extends Metric {
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name, String help, String[] labels) {
+        super(name, help, "counter", labels);
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        out.append(name).append(labelText(null, null)).append(' ').append(value.sum()).append('\n');
+    }
+
+    @Override
+    void collect(Map<String, Object> attributes) {
+        attributes.put(attributeName(""), value.sum());
+    }
+}
@@ -0,0 +1,23 @@
+package metrics;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Valor instantáneo que se lee al consultar las métricas (clientes conectados, salas, entidades)
+final class Gauge extends Metric {
+    private final LongSupplier value;
+
+    Gauge(String name, String help, LongSupplier value, String[] labels) {
+        super(name, help, "gauge", labels);
+        this.value = value;
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        out.append(name).append(labelText(null, null)).append(' ').append(value.getAsLong()).append('\n');
+    }
+
+    @Override
+    void collect(Map<String, Object> attributes) {
+        attributes.put(attributeName(""), value.getAsLong());
+    }
+}
@@ -0,0 +1,67 @@
+package metrics;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Histograma de cubos fijos. record() solo recorre los límites y suma en un LongAdder, sin bloqueos
+ * ni memoria nueva, así que se puede llamar en cada tick. Los valores se guardan en la unidad del
+ * llamador (nanosegundos en los tiempos) y se exponen multiplicados por scale (segundos en Prometheus).
+ */
+public final class Histogram extends Metric {
+    private final long[] bounds;
+    private final double scale;
+    // Un cubo por límite más el de +Inf; no acumulados, se acumulan al exportar
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+    Histogram(String name, String help, long[] bounds, double scale, String[] labels) {
+        super(name, help, "histogram", labels);
+        this.bounds = bounds.clone();
+        this.scale = scale;
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sum.add(value);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            String le = i < bounds.length ? format(bounds[i] * scale) : "+Inf";
+            out.append(name).append("_bucket").append(labelText("le", le)).append(' ').append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum").append(labelText(null, null)).append(' ').append(format(sum.sum() * scale)).append('\n');
+        out.append(name).append("_count").append(labelText(null, null)).append(' ').append(cumulative).append('\n');
+    }
+
+    @Override
+    void collect(Map<String, Object> attributes) {
+        attributes.put(attributeName("_count"), count());
+        attributes.put(attributeName("_sum"), sum.sum() * scale);
+    }
+
+    private static String format(double value) {
+        return BigDecimal.valueOf(value).round(MathContext.DECIMAL64).stripTrailingZeros().toPlainString();
+    }
+}
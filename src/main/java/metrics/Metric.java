@@ -0,0 +1,59 @@
+package metrics;
+import java.util.Map;
+
+// Una serie registrada en Metrics: nombre, ayuda, tipo de Prometheus y etiquetas fijas
+abstract class Metric {
+    final String name;
+    final String help;
+    final String type;
+    // Pares clave, valor
+    final String[] labels;
+
+    Metric(String name, String help, String type, String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be key/value pairs: " + name);
+        }
+        this.name = name;
+        this.help = help;
+        this.type = type;
+        this.labels = labels;
+    }
+
+    String key() {
+        return name + labelText(null, null);
+    }
+
+    // {k="v",...} con una etiqueta extra opcional (le de los histogramas); vacío si no hay ninguna
+    String labelText(String extraKey, String extraValue) {
+        if (labels.length == 0 && extraKey == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"").append(labels[i + 1]).append('"');
+        }
+        if (extraKey != null) {
+            if (labels.length > 0) {
+                text.append(',');
+            }
+            text.append(extraKey).append("=\"").append(extraValue).append('"');
+        }
+        return text.append('}').toString();
+    }
+
+    // Nombre plano para JMX: nombre_valor1_valor2...
+    String attributeName(String suffix) {
+        StringBuilder text = new StringBuilder(name);
+        for (int i = 1; i < labels.length; i += 2) {
+            text.append('_').append(labels[i]);
+        }
+        return text.append(suffix).toString();
+    }
+
+    abstract void writeSamples(StringBuilder out);
+
+    abstract void collect(Map<String, Object> attributes);
+}
@@ -0,0 +1,92 @@
+package metrics;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/*
+ * Registro de métricas del servidor. Contadores e histogramas se crean una vez (normalmente en un
+ * campo static final) y se actualizan sin bloqueos desde el tick o los hilos de E/S; los gauges se
+ * evalúan solo al consultar. MetricsServer las expone en formato de texto de Prometheus y MetricsMBean
+ * por JMX.
+ */
+public final class Metrics {
+    private static final double NANOS_TO_SECONDS = 1e-9;
+    // Límites de los histogramas de tiempo, en nanosegundos: de 50 µs a 1 s
+    private static final long[] TIME_BOUNDS_NANOS = {
+            50_000L, 100_000L, 250_000L, 500_000L, 1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L, 250_000_000L, 1_000_000_000L
+    };
+
+    // Por nombre y etiquetas, en orden de registro; las series de un mismo nombre se exportan juntas
+    private static final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    // labels: pares clave, valor fijos de la serie, p. ej. "phase", "movement"
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) register(new Counter(name, help, labels), false);
+    }
+
+    public static Histogram histogram(String name, String help, long[] bounds, String... labels) {
+        return (Histogram) register(new Histogram(name, help, bounds, 1, labels), false);
+    }
+
+    // Histograma de duraciones: se registra en nanosegundos y se exporta en segundos
+    public static Histogram timer(String name, String help, String... labels) {
+        return (Histogram) register(new Histogram(name, help, TIME_BOUNDS_NANOS, NANOS_TO_SECONDS, labels), false);
+    }
+
+    // Un gauge con el mismo nombre y etiquetas sustituye al anterior (p. ej. otro GameServer en el mismo proceso)
+    public static void gauge(String name, String help, LongSupplier value, String... labels) {
+        register(new Gauge(name, help, value, labels), true);
+    }
+
+    private static synchronized Metric register(Metric metric, boolean replace) {
+        Metric existing = metrics.get(metric.key());
+        if (existing != null && !replace) {
+            if (existing.getClass() != metric.getClass()) {
+                throw new IllegalArgumentException("Metric " + metric.name + " already registered as " + existing.type);
+            }
+            return existing;
+        }
+        metrics.put(metric.key(), metric);
+        return metric;
+    }
+
+    private static synchronized List<Metric> snapshot() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    // Formato de texto de Prometheus 0.0.4
+    public static String scrape() {
+        List<Metric> current = snapshot();
+        StringBuilder out = new StringBuilder(4096);
+        List<String> written = new ArrayList<>();
+        for (Metric metric : current) {
+            if (written.contains(metric.name)) {
+                continue;
+            }
+            written.add(metric.name);
+            out.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+            out.append("# TYPE ").append(metric.name).append(' ').append(metric.type).append('\n');
+            for (Metric series : current) {
+                if (series.name.equals(metric.name)) {
+                    series.writeSamples(out);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    // Valores planos para los atributos del MBean
+    static Map<String, Object> collect() {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (Metric metric : snapshot()) {
+            metric.collect(attributes);
+        }
+        return attributes;
+    }
+}
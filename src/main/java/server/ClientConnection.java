@@ -0,0 +1,17 @@
+package server;
+
+import messages.EncodedSnapshot;
+
+// Una conexión de cliente, independiente del transporte (hilos bloqueantes o NIO)
+public interface ClientConnection {
+    int getPlayerId();
+
+    // Entrega el último snapshot al escritor de la conexión; nunca bloquea al hilo del tick
+    void publish(EncodedSnapshot snapshot);
+
+    long getCoalescedSnapshots();
+
+    SnapshotMailbox.Traffic getSnapshotTraffic();
+
+    void close();
+}
@@ -1,129 +1,199 @@
 package server;
 import java.net.*;
-import java.util.*;
 import java.io.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import client.ClientHandler;
-import game.GameState;
-import messages.Message;
+import logging.Log;
+import metrics.MetricsMBean;
+import metrics.MetricsServer;
 
 public class GameServer {
     private ServerSocket serverSocket;
-    private List<ClientHandler> clients = new CopyOnWriteArrayList<>();
-    private GameState gameState;
+    private NioServer nioServer;
+    private final Transport transport;
+    private final RoomManager rooms;
     private boolean running = true;
-    private Timer gameTimer;
-    private static final int UPDATE_INTERVAL = 1000 / 30;
+    private static final int DEFAULT_TICK_RATE = 30;
+    private static final int DEFAULT_IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int DEFAULT_TICK_THREADS = Runtime.getRuntime().availableProcessors();
+    // Puerto local de /metrics; 0 lo desactiva
+    private static final int DEFAULT_METRICS_PORT = 9464;
 
     public GameServer(int port) throws IOException {
+        this(port, Transport.NIO, DEFAULT_IO_THREADS);
+    }
+
+    public GameServer(int port, Transport transport, int ioThreads) throws IOException {
+        this(port, transport, ioThreads, DEFAULT_TICK_RATE, DEFAULT_TICK_RATE);
+    }
+
+    public GameServer(int port, Transport transport, int ioThreads, int tickRate, int broadcastRate) throws IOException {
+        this(port, transport, ioThreads, tickRate, broadcastRate, DEFAULT_TICK_THREADS);
+    }
+
+    public GameServer(int port, Transport transport, int ioThreads, int tickRate, int broadcastRate,
+                      int tickThreads) throws IOException {
+        this.transport = transport;
+        this.rooms = new RoomManager(tickThreads, tickRate, broadcastRate);
         try {
-            serverSocket = new ServerSocket(port);
-            gameState = new GameState();
-            System.out.println("Servidor iniciado en el puerto " + port);
+            if (transport == Transport.NIO) {
+                nioServer = new NioServer(this, port, ioThreads);
+            } else {
+                serverSocket = new ServerSocket(port);
+            }
+            System.out.println("Servidor iniciado en el puerto " + port + " (transporte " + transport + ")");
         } catch (IOException e) {
             System.err.println("No se pudo iniciar el servidor en el puerto " + port);
             throw e;
         }
     }
 
-    public void start() {
-        new Thread(() -> {
+    public void start() throws IOException {
+        if (transport == Transport.NIO) {
+            nioServer.start();
+        } else {
+            startAcceptThread();
+        }
+        rooms.start();
+    }
+
+    private void startAcceptThread() {
+        // En modo VIRTUAL tanto el bucle de accept como cada ClientHandler corren en hilos virtuales
+        Thread.Builder handlerThreads = transport == Transport.VIRTUAL ? Thread.ofVirtual() : Thread.ofPlatform();
+        Thread.Builder acceptThread = transport == Transport.VIRTUAL ? Thread.ofVirtual() : Thread.ofPlatform();
+        acceptThread.name("AcceptLoop").start(() -> {
             while (running) {
                 try {
-                    System.out.println("Esperando conexiones de clientes...");
+                    Log.debug("Esperando conexiones de clientes").log();
                     Socket clientSocket = serverSocket.accept();
-                    System.out.println("Nuevo cliente conectado: " + clientSocket.getInetAddress());
-                    int playerId = clients.size();
-                    ClientHandler clientHandler = new ClientHandler(clientSocket, gameState, playerId);
-                    clients.add(clientHandler);
-                    clientHandler.start();
-                    System.out.println("Manejador de cliente iniciado. Total de clientes: " + clients.size());
+                    Log.info("Nuevo cliente conectado").with("direccion", String.valueOf(clientSocket.getInetAddress())).log();
+                    // El handshake elige la sala y el ID del jugador dentro de ella
+                    ClientHandler clientHandler = new ClientHandler(clientSocket, rooms, rooms.newMailbox());
+                    clientHandler.getRoom().add(clientHandler);
+                    clientHandler.start(handlerThreads);
                 } catch (IOException e) {
                     if (running) {
-                        System.err.println("Error al aceptar la conexión del cliente: " + e.getMessage());
-                        e.printStackTrace();
+                        Log.warn("Error al aceptar la conexión del cliente").with("error", e.getMessage()).log();
                     }
                 }
             }
-        }).start();
+        });
+    }
 
-        gameTimer = new Timer("GameLoop");
-        gameTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    gameState.update();
-                    if (!clients.isEmpty()) {
-                        broadcastState();
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error en el bucle del juego: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            }
-        }, 0, UPDATE_INTERVAL);
+    RoomManager getRooms() {
+        return rooms;
+    }
 
-        System.out.println("Bucle del juego iniciado");
+    // Llamado por el transporte NIO cuando termina el handshake
+    void onConnectionReady(ClientConnection connection, Room room) {
+        // La nave aparece en el siguiente tick; el estado inicial es el último publicado
+        room.getGameState().queueAddPlayer(connection.getPlayerId());
+        connection.publish(room.encodeState());
+        room.add(connection);
     }
 
-    private void broadcastState() {
-        if (clients.isEmpty()) return;
-
-        Message message = new Message("UPDATE_STATE");
-        message.setObjects(gameState.getGameObjects());
-        message.setGameOver(gameState.isGameOver());
-        message.getPlayerScores().putAll(gameState.getPlayerScores());
-
-        List<ClientHandler> disconnectedClients = new ArrayList<>();
-        for (ClientHandler client : clients) {
-            try {
-                client.sendMessage(message);
-            } catch (IOException e) {
-                System.err.println("Error al enviar mensaje al cliente. Marcando para eliminación.");
-                disconnectedClients.add(client);
-            }
+    void onConnectionClosed(ClientConnection connection, RoomManager.Seat seat, boolean playerAdded) {
+        Room room = seat.getRoom();
+        room.remove(connection);
+        if (playerAdded) {
+            room.getGameState().queueRemovePlayer(connection.getPlayerId());
         }
+        rooms.leave(seat);
+    }
 
-        for (ClientHandler client : disconnectedClients) {
-            clients.remove(client);
-            System.out.println("Cliente eliminado. Clientes restantes: " + clients.size());
-        }
+    // Graba las partidas de las salas que se creen a partir de ahora (ver game.Replay)
+    public void setRecordDirectory(Path recordDir) throws IOException {
+        Files.createDirectories(recordDir);
+        rooms.setRecordDirectory(recordDir);
+        System.out.println("Grabando las partidas en " + recordDir.toAbsolutePath());
+    }
+
+    public int getRoomCount() {
+        return rooms.getRoomCount();
     }
 
     public void stop() {
         running = false;
-        if (gameTimer != null) {
-            gameTimer.cancel();
-        }
-        for (ClientHandler client : clients) {
-            try {
-                client.interrupt();
-            } catch (Exception e) {}
-        }
+        rooms.stop();
         try {
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.warn("Error al cerrar el socket del servidor").with("error", e.getMessage()).log();
+        }
+        if (nioServer != null) {
+            nioServer.stop();
         }
         System.out.println("Servidor detenido");
     }
 
+    // Sin métricas si el puerto está ocupado: el juego no depende de ellas
+    private static MetricsServer startMetrics(int port) {
+        if (port <= 0) {
+            return null;
+        }
+        try {
+            MetricsServer metrics = new MetricsServer(port);
+            metrics.start();
+            System.out.println("Métricas disponibles en http://localhost:" + metrics.getPort() + "/metrics");
+            return metrics;
+        } catch (IOException e) {
+            System.err.println("No se pudo iniciar el endpoint de métricas en el puerto " + port + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     public static void main(String[] args) {
         int port = 12345;
+        Transport transport = Transport.NIO;
+        int ioThreads = DEFAULT_IO_THREADS;
+        int tickRate = DEFAULT_TICK_RATE;
+        int broadcastRate = DEFAULT_TICK_RATE;
+        int tickThreads = DEFAULT_TICK_THREADS;
+        int metricsPort = DEFAULT_METRICS_PORT;
+        Path recordDir = null;
+        for (String arg : args) {
+            if (arg.startsWith("--transport=")) {
+                transport = Transport.parse(arg.substring("--transport=".length()));
+            } else if (arg.startsWith("--io-threads=")) {
+                ioThreads = Integer.parseInt(arg.substring("--io-threads=".length()));
+            } else if (arg.startsWith("--tick-rate=")) {
+                tickRate = Integer.parseInt(arg.substring("--tick-rate=".length()));
+            } else if (arg.startsWith("--broadcast-rate=")) {
+                broadcastRate = Integer.parseInt(arg.substring("--broadcast-rate=".length()));
+            } else if (arg.startsWith("--tick-threads=")) {
+                tickThreads = Integer.parseInt(arg.substring("--tick-threads=".length()));
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--metrics-port=")) {
+                metricsPort = Integer.parseInt(arg.substring("--metrics-port=".length()));
+            } else if (arg.startsWith("--record=")) {
+                recordDir = Paths.get(arg.substring("--record=".length()));
+            }
+        }
         try {
-            GameServer server = new GameServer(port);
+            GameServer server = new GameServer(port, transport, ioThreads, tickRate, broadcastRate, tickThreads);
+            if (recordDir != null) {
+                server.setRecordDirectory(recordDir);
+            }
             server.start();
+            // JMX no depende del puerto HTTP: sigue disponible con --metrics-port=0
+            MetricsMBean.register();
+            MetricsServer metrics = startMetrics(metricsPort);
             System.out.println("Presiona Ctrl+C para detener el servidor");
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 System.out.println("Apagando el servidor...");
+                if (metrics != null) {
+                    metrics.stop();
+                }
                 server.stop();
             }));
         } catch (IOException e) {
-            System.err.println("El servidor no pudo iniciarse: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("El servidor no pudo iniciarse").with("error", e).log();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package server;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+
+/*
+ * Lee objetos de un ObjectOutputStream de cliente antiguo a partir de bytes parciales.
+ * El cliente hace reset() tras cada mensaje, así que cada objeto es independiente:
+ * basta con anteponer la cabecera del stream e intentar leer uno; si faltan bytes se espera.
+ */
+final class LegacyMessageDecoder {
+    static final byte[] STREAM_HEADER = {
+            (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8), (byte) ObjectStreamConstants.STREAM_MAGIC,
+            (byte) (ObjectStreamConstants.STREAM_VERSION >> 8), (byte) ObjectStreamConstants.STREAM_VERSION
+    };
+
+    private LegacyMessageDecoder() {}
+
+    // Devuelve el siguiente objeto completo y avanza el buffer, o null si todavía no ha llegado entero
+    static Object tryRead(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && buffer.get(buffer.position()) == ObjectStreamConstants.TC_RESET) {
+            buffer.get();
+        }
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+
+        int available = buffer.remaining();
+        ByteArrayInputStream body = new ByteArrayInputStream(buffer.array(),
+                buffer.arrayOffset() + buffer.position(), available);
+        try (ObjectInputStream in = new ObjectInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(STREAM_HEADER), body))) {
+            Object obj = in.readObject();
+            buffer.position(buffer.position() + available - body.available());
+            return obj;
+        } catch (EOFException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class from legacy client: " + e.getMessage(), e);
+        }
+    }
+
+    // Cabecera del stream seguida de un bloque de datos con writeInt(value), como ObjectOutputStream
+    static byte[] headerWithInt(int value) {
+        return new byte[] {
+                STREAM_HEADER[0], STREAM_HEADER[1], STREAM_HEADER[2], STREAM_HEADER[3],
+                ObjectStreamConstants.TC_BLOCKDATA, 4,
+                (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value
+        };
+    }
+}
@@ -0,0 +1,404 @@
+package server;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import game.GameState;
+import logging.Log;
+import logging.LogLimit;
+import messages.EncodedSnapshot;
+import messages.FrameBytes;
+import messages.Message;
+import messages.Protocol;
+
+final class NioConnection implements ClientConnection, IoLoop.Handler {
+    private enum State { HANDSHAKE, STREAM_HEADER, OPEN, CLOSED }
+
+    private static final LogLimit ERROR_LOG = LogLimit.perSecond(10);
+
+    // Snapshots seguidos coalescidos sin que el cliente termine de leer uno antes de desconectarlo
+    private static final int MAX_COALESCED_SNAPSHOTS = 300;
+
+    private final GameServer server;
+    private final SocketChannel channel;
+    private final IoLoop loop;
+    // La sala y el ID del jugador se asignan en el handshake
+    private RoomManager.Seat seat;
+    private Room room;
+    private int playerId = -1;
+    private SelectionKey key;
+
+    private State state = State.HANDSHAKE;
+    private boolean legacyClient;
+    private byte protocol;
+    private volatile int ackedSequence = -1;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+
+    private final Object writeLock = new Object();
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final SnapshotMailbox mailbox;
+    private long frameStartNanos;
+    // Hay un pump encolado en el IoLoop; evita encolar y despertar el selector en cada broadcast
+    private final AtomicBoolean pumpScheduled = new AtomicBoolean();
+    private final Runnable pumpTask = this::pumpOnLoop;
+
+    NioConnection(GameServer server, SocketChannel channel, IoLoop loop, SnapshotMailbox mailbox) {
+        this.server = server;
+        this.channel = channel;
+        this.loop = loop;
+        this.mailbox = mailbox;
+    }
+
+    // Se ejecuta en el hilo del IoLoop
+    void register() throws IOException {
+        key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+    }
+
+    @Override
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    @Override
+    public void onSelected(SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                onWritable();
+            }
+        } catch (IOException e) {
+            Log.info("Client disconnected").with("jugador", playerId).with("motivo", e.getMessage()).log();
+            close();
+        }
+    }
+
+    private void onReadable() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            if (readBuffer.capacity() >= Protocol.MAX_FRAME_SIZE + 4) {
+                throw new IOException("Read buffer overflow");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+        if (channel.read(readBuffer) < 0) {
+            throw new IOException("Connection closed by client");
+        }
+        readBuffer.flip();
+        try {
+            while (state != State.CLOSED && processInput()) {
+                // seguir mientras haya mensajes completos
+            }
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    // Devuelve false cuando faltan bytes para el siguiente paso. Un mensaje mal formado cierra la
+    // conexión como un error de E/S en lugar de llegar al bucle con la posición de lectura a medias
+    private boolean processInput() throws IOException {
+        try {
+            return decode();
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed message: " + e, e);
+        }
+    }
+
+    private boolean decode() throws IOException {
+        switch (state) {
+            case HANDSHAKE:
+                return readHandshake();
+            case STREAM_HEADER:
+                if (readBuffer.remaining() < LegacyMessageDecoder.STREAM_HEADER.length) {
+                    return false;
+                }
+                readBuffer.position(readBuffer.position() + LegacyMessageDecoder.STREAM_HEADER.length);
+                open();
+                return true;
+            case OPEN:
+                return protocol == Protocol.BINARY ? readFrame() : readLegacyMessage();
+            default:
+                return false;
+        }
+    }
+
+    private boolean readHandshake() throws IOException {
+        if (readBuffer.remaining() < 2) {
+            return false;
+        }
+        int header = readBuffer.getShort(readBuffer.position()) & 0xFFFF;
+        if (header == Protocol.JAVA_STREAM_MAGIC) {
+            // Cliente antiguo: su cabecera de ObjectOutputStream hace de handshake y va a la sala por defecto
+            legacyClient = true;
+            protocol = Protocol.SERIALIZED;
+            joinRoom(Protocol.ROOM_JOIN, Protocol.DEFAULT_ROOM);
+            state = State.STREAM_HEADER;
+            return true;
+        }
+        if (readBuffer.remaining() < 6) {
+            return false;
+        }
+        int start = readBuffer.position();
+        if (readBuffer.getInt(start) != Protocol.MAGIC) {
+            throw new IOException("Invalid handshake from " + channel.getRemoteAddress());
+        }
+        byte version = readBuffer.get(start + 4);
+        byte requested = readBuffer.get(start + 5);
+        byte roomOperation = Protocol.ROOM_JOIN;
+        String roomName = Protocol.DEFAULT_ROOM;
+        int length = 6;
+        if (version >= Protocol.ROOMS_VERSION) {
+            // operación (1 byte) + nombre en formato writeUTF (longitud de 2 bytes + caracteres)
+            if (readBuffer.remaining() < 9) {
+                return false;
+            }
+            roomOperation = readBuffer.get(start + 6);
+            int nameLength = readBuffer.getShort(start + 7) & 0xFFFF;
+            if (nameLength > Protocol.MAX_ROOM_NAME) {
+                throw new IOException("Room name too long: " + nameLength);
+            }
+            length = 9 + nameLength;
+            if (readBuffer.remaining() < length) {
+                return false;
+            }
+            byte[] name = new byte[nameLength];
+            readBuffer.get(start + 9, name);
+            roomName = Protocol.checkRoomName(new String(name, StandardCharsets.UTF_8));
+        }
+        readBuffer.position(start + length);
+        protocol = Protocol.negotiate(version, requested);
+        joinRoom(roomOperation, roomName);
+
+        byte[] joined = room.getName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer reply = ByteBuffer.allocate(version >= Protocol.ROOMS_VERSION ? 11 + joined.length : 9);
+        reply.putInt(Protocol.MAGIC).put(protocol).putInt(playerId);
+        if (version >= Protocol.ROOMS_VERSION) {
+            reply.putShort((short) joined.length).put(joined);
+        }
+        reply.flip();
+        enqueue(reply);
+        if (protocol == Protocol.BINARY) {
+            open();
+        } else {
+            enqueue(ByteBuffer.wrap(LegacyMessageDecoder.STREAM_HEADER));
+            state = State.STREAM_HEADER;
+        }
+        return true;
+    }
+
+    private void open() throws IOException {
+        if (legacyClient) {
+            enqueue(ByteBuffer.wrap(LegacyMessageDecoder.headerWithInt(playerId)));
+        }
+        state = State.OPEN;
+        server.onConnectionReady(this, room);
+        pump();
+        Log.info("Conexión NIO inicializada").with("jugador", playerId).with("sala", room.getName())
+                .with("protocolo", protocol == Protocol.BINARY ? "binario" : "serializado").log();
+    }
+
+    private void joinRoom(byte operation, String name) {
+        seat = server.getRooms().join(operation, name);
+        room = seat.getRoom();
+        playerId = seat.getPlayerId();
+    }
+
+    private boolean readFrame() throws IOException {
+        if (readBuffer.remaining() < 4) {
+            return false;
+        }
+        int frameLength = readBuffer.getInt(readBuffer.position());
+        if (frameLength < 1 || frameLength > Protocol.MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + frameLength);
+        }
+        if (readBuffer.remaining() < 4 + frameLength) {
+            return false;
+        }
+        readBuffer.getInt();
+        int end = readBuffer.position() + frameLength;
+        byte type = readBuffer.get();
+        switch (type) {
+            case Protocol.FRAME_INPUT:
+                // Formato anterior: una entrada por frame, con secuencia opcional
+                requireLength(type, frameLength, 2);
+                int inputs = GameState.inputBit(Protocol.inputName(readBuffer.get() & 0xFF));
+                onInput(inputs, frameLength >= 6 ? readBuffer.getInt() : 0);
+                break;
+            case Protocol.FRAME_INPUT_STATE:
+                requireLength(type, frameLength, 6);
+                onInput(readBuffer.get() & 0xFF, readBuffer.getInt());
+                break;
+            case Protocol.FRAME_ACK:
+                requireLength(type, frameLength, 5);
+                int sequence = readBuffer.getInt();
+                if (sequence > ackedSequence) {
+                    ackedSequence = sequence;
+                }
+                break;
+            case Protocol.FRAME_PING:
+                break;
+            default:
+                Log.warn(ERROR_LOG, "Unknown frame type").with("tipo", type).with("jugador", playerId).log();
+        }
+        readBuffer.position(end);
+        return true;
+    }
+
+    // frameLength incluye el byte de tipo
+    private static void requireLength(byte type, int frameLength, int minimum) throws IOException {
+        if (frameLength < minimum) {
+            throw new IOException("Frame type " + type + " too short: " + frameLength + " bytes, expected " + minimum);
+        }
+    }
+
+    private boolean readLegacyMessage() throws IOException {
+        Object obj = LegacyMessageDecoder.tryRead(readBuffer);
+        if (obj == null) {
+            return false;
+        }
+        if (obj instanceof Message) {
+            Message message = (Message) obj;
+            if (message.getAction().equals("PLAYER_INPUT")) {
+                onInput(message.getInputs() != 0 ? message.getInputs() : GameState.inputBit(message.getInput()),
+                        message.getInputSequence());
+            }
+        } else {
+            Log.warn(ERROR_LOG, "Received unknown object type").with("jugador", playerId)
+                    .with("tipo", obj.getClass().getName()).log();
+        }
+        return true;
+    }
+
+    // La entrada se aplica en el siguiente tick y el cliente la ve en el broadcast normal
+    private void onInput(int inputs, int sequence) {
+        room.queueInput(playerId, inputs, sequence);
+    }
+
+    private FrameBytes frameFor(EncodedSnapshot snapshot) {
+        FrameBytes frame = protocol == Protocol.BINARY ? snapshot.binaryFrame(ackedSequence) : snapshot.serializedFrame();
+        mailbox.recordFrame(frame);
+        return frame;
+    }
+
+    // Desde el hilo del tick: solo deja el snapshot en el buzón; la codificación y la escritura
+    // se hacen en el IoLoop, así el tick no espera al socket ni al writeLock
+    @Override
+    public void publish(EncodedSnapshot snapshot) {
+        if (mailbox.offer(snapshot) > MAX_COALESCED_SNAPSHOTS) {
+            Log.warn("Client is not reading, disconnecting").with("jugador", playerId).log();
+            close();
+            return;
+        }
+        if (pumpScheduled.compareAndSet(false, true)) {
+            loop.execute(pumpTask);
+        }
+    }
+
+    private void pumpOnLoop() {
+        pumpScheduled.set(false);
+        try {
+            pump();
+        } catch (IOException e) {
+            Log.warn(ERROR_LOG, "Error sending message to client").with("jugador", playerId).with("error", e.getMessage()).log();
+            close();
+        }
+    }
+
+    // Solo en el IoLoop: con la cola vacía, codifica y envía el snapshot más reciente del buzón
+    private void pump() throws IOException {
+        synchronized (writeLock) {
+            if (state != State.OPEN || !writeQueue.isEmpty()) {
+                return;
+            }
+            EncodedSnapshot snapshot = mailbox.poll();
+            if (snapshot == null) {
+                return;
+            }
+            frameStartNanos = System.nanoTime();
+            enqueue(frameFor(snapshot).buffer());
+            if (writeQueue.isEmpty()) {
+                mailbox.recordWrite(System.nanoTime() - frameStartNanos);
+                frameStartNanos = 0;
+            }
+        }
+    }
+
+    @Override
+    public long getCoalescedSnapshots() {
+        return mailbox.getCoalesced();
+    }
+
+    @Override
+    public SnapshotMailbox.Traffic getSnapshotTraffic() {
+        return mailbox.getTraffic();
+    }
+
+    private void enqueue(ByteBuffer buffer) throws IOException {
+        synchronized (writeLock) {
+            if (writeQueue.isEmpty()) {
+                // Camino rápido: escribir directamente sin pasar por el selector
+                channel.write(buffer);
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+            }
+            writeQueue.add(buffer);
+            if ((key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                loop.wakeup();
+            }
+        }
+    }
+
+    private void onWritable() throws IOException {
+        synchronized (writeLock) {
+            // Escritura con gather de todos los frames pendientes
+            channel.write(writeQueue.toArray(new ByteBuffer[0]));
+            while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+                writeQueue.poll();
+            }
+            if (!writeQueue.isEmpty()) {
+                return;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (frameStartNanos != 0) {
+                mailbox.recordWrite(System.nanoTime() - frameStartNanos);
+                frameStartNanos = 0;
+            }
+        }
+        pump();
+    }
+
+    @Override
+    public void close() {
+        boolean wasOpen;
+        synchronized (writeLock) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            wasOpen = state == State.OPEN;
+            state = State.CLOSED;
+            writeQueue.clear();
+        }
+        mailbox.close();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.warn("Error closing socket").with("jugador", playerId).with("error", e.getMessage()).log();
+        }
+        if (seat != null) {
+            server.onConnectionClosed(this, seat, wasOpen);
+        }
+        Log.info("Conexión NIO cerrada").with("jugador", playerId).log();
+    }
+}
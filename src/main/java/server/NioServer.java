@@ -0,0 +1,71 @@
+package server;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import logging.Log;
+
+// Transporte no bloqueante: el primer IoLoop acepta conexiones y las reparte entre todos
+final class NioServer implements IoLoop.Handler {
+    private final GameServer server;
+    private final ServerSocketChannel serverChannel;
+    private final IoLoop[] loops;
+    private int nextLoop = 0;
+
+    NioServer(GameServer server, int port, int ioThreads) throws IOException {
+        this.server = server;
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        loops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new IoLoop("NioLoop-" + i);
+        }
+    }
+
+    void start() throws IOException {
+        serverChannel.register(loops[0].selector(), SelectionKey.OP_ACCEPT, this);
+        for (IoLoop loop : loops) {
+            loop.start();
+        }
+        System.out.println("Transporte NIO iniciado con " + loops.length + " hilos de E/S");
+    }
+
+    @Override
+    public void onSelected(SelectionKey key) {
+        SocketChannel channel;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                Log.info("Nuevo cliente conectado").with("direccion", String.valueOf(channel.getRemoteAddress())).log();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                IoLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                NioConnection connection = new NioConnection(server, channel, loop, server.getRooms().newMailbox());
+                loop.execute(() -> {
+                    try {
+                        connection.register();
+                    } catch (IOException e) {
+                        Log.warn("Error registering client connection").with("error", e.getMessage()).log();
+                        connection.close();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            Log.warn("Error al aceptar la conexión del cliente").with("error", e.getMessage()).log();
+        }
+    }
+
+    void stop() {
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            Log.warn("Error al cerrar el socket del servidor").with("error", e.getMessage()).log();
+        }
+        for (IoLoop loop : loops) {
+            loop.stop();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package server;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import game.GameState;
+import game.InputLog;
+import logging.Log;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+import messages.EncodedSnapshot;
+import messages.Message;
+import messages.SnapshotEncoder;
+
+/*
+ * Una partida independiente: su GameState, sus conexiones, su codificador de snapshots
+ * (cada sala lleva su propia secuencia de deltas) y su reloj de paso fijo.
+ * Las altas y bajas pasan por RoomManager, que decide cuándo se crea y se elimina la sala.
+ */
+public final class Room {
+    // Tiempos de publicación acumulados, se informan cada STATS_REPORT_TICKS broadcasts
+    private static final int STATS_REPORT_TICKS = 150;
+    private static final Histogram BROADCAST_TIME = Metrics.timer("spaceinvaders_broadcast_seconds",
+            "Time to capture a room snapshot and hand it to every client mailbox");
+    private static final Counter CONNECTIONS = Metrics.counter("spaceinvaders_connections_total",
+            "Client connections registered in a room");
+    private static final DateTimeFormatter RECORDING_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final String name;
+    private final GameState gameState = new GameState();
+    private final SnapshotEncoder snapshotEncoder = new SnapshotEncoder();
+    private final List<ClientConnection> clients = new CopyOnWriteArrayList<>();
+    private final BitSet usedPlayerIds = new BitSet();
+    private final LatencyWindow clientWriteTimes;
+    private final TickClock clock;
+    // Grabación de la partida para game.Replay; null si el servidor no graba
+    private final InputLog recording;
+    private TickScheduler scheduler;
+
+    private int statsTicks;
+    private long statsPublishNanos;
+    private long statsMaxPublishNanos;
+
+    Room(String name, int tickRate, int broadcastRate, LatencyWindow clientWriteTimes) {
+        this(name, tickRate, broadcastRate, clientWriteTimes, null);
+    }
+
+    // recordDir: directorio donde grabar la partida (<sala>-<fecha>.replay), o null
+    Room(String name, int tickRate, int broadcastRate, LatencyWindow clientWriteTimes, Path recordDir) {
+        this.name = name;
+        this.clientWriteTimes = clientWriteTimes;
+        this.recording = recordDir != null ? startRecording(recordDir, 1.0 / tickRate) : null;
+        this.clock = new TickClock("Sala " + name, tickRate, broadcastRate,
+                (tick, dt) -> gameState.update(tick, dt, false),
+                () -> {
+                    // La vista solo se copia cuando hay broadcast, no en cada tick
+                    gameState.publish();
+                    if (!clients.isEmpty()) {
+                        broadcastState();
+                    }
+                });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    public EncodedSnapshot encodeState() {
+        return snapshotEncoder.encode(gameState);
+    }
+
+    // Mensajes UPDATE_STATE ya construidos; comparten la secuencia de snapshots de la sala
+    public EncodedSnapshot encode(Message message) {
+        return snapshotEncoder.encode(message);
+    }
+
+    // Se aplica al principio del siguiente tick; inputs es una combinación de GameState.INPUT_*
+    public void queueInput(int playerId, int inputs, int sequence) {
+        gameState.queueInput(playerId, inputs, sequence);
+    }
+
+    // Registra la conexión para recibir los broadcasts de la sala
+    public void add(ClientConnection connection) {
+        clients.add(connection);
+        CONNECTIONS.increment();
+        Log.info("Conexión registrada").with("sala", name).with("clientes", clients.size()).log();
+    }
+
+    public boolean remove(ClientConnection connection) {
+        return clients.remove(connection);
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    TickClock clock() {
+        return clock;
+    }
+
+    TickScheduler scheduler() {
+        return scheduler;
+    }
+
+    void setScheduler(TickScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    // El ID más bajo libre dentro de la sala; la posición inicial de la nave depende de él
+    int allocatePlayerId() {
+        int playerId = usedPlayerIds.nextClearBit(0);
+        usedPlayerIds.set(playerId);
+        return playerId;
+    }
+
+    void releasePlayerId(int playerId) {
+        usedPlayerIds.clear(playerId);
+    }
+
+    int getPlayerCount() {
+        return usedPlayerIds.cardinality();
+    }
+
+    private InputLog startRecording(Path recordDir, double dt) {
+        Path file = recordDir.resolve(name.replaceAll("[^A-Za-z0-9_-]", "_") + "-"
+                + LocalDateTime.now().format(RECORDING_TIME) + ".replay");
+        try {
+            InputLog log = InputLog.record(gameState, file, dt);
+            Log.info("Grabando la partida").with("sala", name).with("fichero", file)
+                    .with("semilla", gameState.getSeed()).log();
+            return log;
+        } catch (IOException e) {
+            Log.warn("No se pudo crear la grabación de la sala").with("sala", name).with("fichero", file)
+                    .with("error", e.getMessage()).log();
+            return null;
+        }
+    }
+
+    // Cierra la grabación; la sala ya no avanza
+    void closeRecording() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    void closeAll() {
+        for (ClientConnection client : clients) {
+            try {
+                client.close();
+            } catch (Exception e) {}
+        }
+    }
+
+    // El tick solo captura el estado y lo deja en el buzón de cada cliente; el delta de cada cliente y
+    // la escritura los hacen los hilos de E/S (IoLoop) o el escritor de cada ClientHandler
+    private void broadcastState() {
+        long publishStart = System.nanoTime();
+        EncodedSnapshot snapshot = encodeState();
+        for (ClientConnection client : clients) {
+            client.publish(snapshot);
+        }
+        long publishNanos = System.nanoTime() - publishStart;
+        BROADCAST_TIME.record(publishNanos);
+        recordPublishTime(publishNanos);
+    }
+
+    private void recordPublishTime(long publishNanos) {
+        statsTicks++;
+        statsPublishNanos += publishNanos;
+        statsMaxPublishNanos = Math.max(statsMaxPublishNanos, publishNanos);
+        if (statsTicks < STATS_REPORT_TICKS) {
+            return;
+        }
+        long coalesced = 0;
+        long frames = 0;
+        long bytes = 0;
+        long saved = 0;
+        for (ClientConnection client : clients) {
+            coalesced += client.getCoalescedSnapshots();
+            SnapshotMailbox.Traffic traffic = client.getSnapshotTraffic();
+            frames += traffic.frames;
+            bytes += traffic.bytes;
+            saved += traffic.savedBytes;
+        }
+        // Medias por snapshot enviado, es decir, por cliente y tick de broadcast
+        Log.info("Broadcast").with("sala", name).with("ticks", statsTicks)
+                .with("publicacion_media_us", statsPublishNanos / statsTicks / 1000)
+                .with("publicacion_max_us", statsMaxPublishNanos / 1000)
+                .with("escritura_p50_us", clientWriteTimes.percentile(0.50) / 1000)
+                .with("escritura_p99_us", clientWriteTimes.percentile(0.99) / 1000)
+                .with("coalescidos", coalesced)
+                .with("bytes_cliente_tick", frames > 0 ? bytes / frames : 0)
+                .with("ahorrados_cliente_tick", frames > 0 ? saved / frames : 0)
+                .log();
+        statsTicks = 0;
+        statsPublishNanos = 0;
+        statsMaxPublishNanos = 0;
+    }
+}
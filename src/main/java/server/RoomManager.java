@@ -0,0 +1,158 @@
+package server;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import game.GameState;
+import logging.Log;
+import messages.Protocol;
+import metrics.Metrics;
+
+/*
+ * Salas activas del servidor. Cada conexión se une a una sala durante el handshake (creándola si no
+ * existe) y la sala se elimina cuando sale su último jugador. Las salas se reparten entre un número
+ * fijo de hilos TickScheduler: cada hilo avanza los relojes de paso fijo de todas sus salas.
+ */
+public final class RoomManager {
+    // Plaza de un jugador en una sala; se devuelve con leave al cerrar la conexión
+    public static final class Seat {
+        private final Room room;
+        private final int playerId;
+
+        Seat(Room room, int playerId) {
+            this.room = room;
+            this.playerId = playerId;
+        }
+
+        public Room getRoom() {
+            return room;
+        }
+
+        public int getPlayerId() {
+            return playerId;
+        }
+    }
+
+    private final Map<String, Room> rooms = new HashMap<>();
+    private final TickScheduler[] schedulers;
+    private final int tickRate;
+    private final int broadcastRate;
+    // Duración de cada escritura en los hilos escritores, compartida por todas las conexiones
+    private final LatencyWindow clientWriteTimes = new LatencyWindow(1024);
+    private int createdRooms;
+    // Si no es null cada sala nueva graba su partida en este directorio
+    private volatile Path recordDir;
+
+    public RoomManager(int tickThreads, int tickRate, int broadcastRate) {
+        this.tickRate = tickRate;
+        this.broadcastRate = broadcastRate;
+        schedulers = new TickScheduler[tickThreads];
+        for (int i = 0; i < tickThreads; i++) {
+            schedulers[i] = new TickScheduler("GameLoop-" + i);
+        }
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        Metrics.gauge("spaceinvaders_rooms", "Active rooms", this::getRoomCount);
+        Metrics.gauge("spaceinvaders_clients", "Connected clients", () -> {
+            long clients = 0;
+            for (Room room : activeRooms()) {
+                clients += room.getClientCount();
+            }
+            return clients;
+        });
+        for (int i = 0; i < GameState.ENTITY_GROUPS.length; i++) {
+            int group = i;
+            Metrics.gauge("spaceinvaders_entities", "Entities in all rooms by group", () -> {
+                long entities = 0;
+                for (Room room : activeRooms()) {
+                    entities += room.getGameState().getEntityCounts()[group];
+                }
+                return entities;
+            }, "group", GameState.ENTITY_GROUPS[i]);
+        }
+    }
+
+    public void setRecordDirectory(Path recordDir) {
+        this.recordDir = recordDir;
+    }
+
+    public void start() {
+        for (TickScheduler scheduler : schedulers) {
+            scheduler.start();
+        }
+        System.out.println("Bucle del juego iniciado con " + schedulers.length + " hilos de simulación");
+    }
+
+    // operation es Protocol.ROOM_JOIN (unirse por nombre, creándola si hace falta) o Protocol.ROOM_CREATE
+    public synchronized Seat join(byte operation, String name) {
+        Room room;
+        if (operation == Protocol.ROOM_CREATE) {
+            room = createRoom(uniqueName());
+        } else {
+            room = rooms.get(name);
+            if (room == null) {
+                room = createRoom(name);
+            }
+        }
+        return new Seat(room, room.allocatePlayerId());
+    }
+
+    public synchronized void leave(Seat seat) {
+        Room room = seat.getRoom();
+        room.releasePlayerId(seat.getPlayerId());
+        if (room.getPlayerCount() == 0 && rooms.get(room.getName()) == room) {
+            rooms.remove(room.getName());
+            room.scheduler().remove(room.clock());
+            room.closeRecording();
+            Log.info("Sala cerrada").with("sala", room.getName()).with("activas", rooms.size()).log();
+        }
+    }
+
+    public SnapshotMailbox newMailbox() {
+        return new SnapshotMailbox(clientWriteTimes);
+    }
+
+    public synchronized int getRoomCount() {
+        return rooms.size();
+    }
+
+    private synchronized Room[] activeRooms() {
+        return rooms.values().toArray(new Room[0]);
+    }
+
+    private Room createRoom(String name) {
+        Room room = new Room(name, tickRate, broadcastRate, clientWriteTimes, recordDir);
+        // El hilo con menos salas se queda con la nueva
+        TickScheduler scheduler = schedulers[0];
+        for (TickScheduler candidate : schedulers) {
+            if (candidate.size() < scheduler.size()) {
+                scheduler = candidate;
+            }
+        }
+        room.setScheduler(scheduler);
+        scheduler.add(room.clock());
+        rooms.put(name, room);
+        Log.info("Sala creada").with("sala", name).with("activas", rooms.size()).log();
+        return room;
+    }
+
+    private String uniqueName() {
+        String name;
+        do {
+            name = "sala-" + (++createdRooms);
+        } while (rooms.containsKey(name));
+        return name;
+    }
+
+    public void stop() {
+        for (TickScheduler scheduler : schedulers) {
+            scheduler.stop();
+        }
+        for (Room room : activeRooms()) {
+            room.closeAll();
+            room.closeRecording();
+        }
+    }
+}
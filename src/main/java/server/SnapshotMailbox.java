@@ -0,0 +1,154 @@
+package server;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import messages.EncodedSnapshot;
+import messages.FrameBytes;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+/*
+ * Buzón de un solo hueco entre el hilo del tick y el escritor de una conexión.
+ * El tick nunca espera: si el escritor no ha recogido el snapshot anterior, se sustituye
+ * por el nuevo (coalescido). Así la memoria por cliente lento está acotada a un snapshot.
+ */
+public class SnapshotMailbox {
+    private static final Histogram WRITE_TIME = Metrics.timer("spaceinvaders_client_write_seconds",
+            "Time to write one snapshot to a client socket");
+    // Snapshots que el escritor lleva de retraso al publicar uno nuevo (0 si ya había recogido el anterior)
+    private static final Histogram QUEUE_DEPTH = Metrics.histogram("spaceinvaders_client_queue_depth",
+            "Snapshots a client writer is behind when a new one is published", new long[] { 0, 1, 2, 4, 8, 16, 32 });
+    private static final Counter COALESCED = Metrics.counter("spaceinvaders_snapshots_coalesced_total",
+            "Snapshots replaced before the client writer sent them");
+    private static final Counter FRAMES_SENT = Metrics.counter("spaceinvaders_snapshots_sent_total",
+            "Snapshot frames sent to clients");
+    private static final Counter BYTES_SENT = Metrics.counter("spaceinvaders_snapshot_bytes_total",
+            "Snapshot bytes sent to clients");
+    private static final Counter BYTES_SAVED = Metrics.counter("spaceinvaders_snapshot_bytes_saved_total",
+            "Estimated snapshot bytes saved by relevance filtering");
+
+    // Snapshots enviados por la conexión, bytes enviados y bytes ahorrados por el filtrado de relevancia
+    public static final class Traffic {
+        public final long frames;
+        public final long bytes;
+        public final long savedBytes;
+
+        Traffic(long frames, long bytes, long savedBytes) {
+            this.frames = frames;
+            this.bytes = bytes;
+            this.savedBytes = savedBytes;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final LatencyWindow writeTimes;
+    private EncodedSnapshot pending;
+    private boolean closed;
+    private long coalesced;
+    private int consecutiveCoalesced;
+    private long frames;
+    private long frameBytes;
+    private long savedBytes;
+
+    public SnapshotMailbox(LatencyWindow writeTimes) {
+        this.writeTimes = writeTimes;
+    }
+
+    // Devuelve el número de snapshots seguidos que se han sustituido sin llegar a enviarse
+    public int offer(EncodedSnapshot snapshot) {
+        lock.lock();
+        try {
+            if (closed) {
+                return 0;
+            }
+            if (pending != null) {
+                coalesced++;
+                consecutiveCoalesced++;
+                COALESCED.increment();
+            }
+            QUEUE_DEPTH.record(consecutiveCoalesced);
+            pending = snapshot;
+            available.signal();
+            return consecutiveCoalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Bloquea hasta que haya un snapshot; null si el buzón se ha cerrado
+    public EncodedSnapshot take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending == null && !closed) {
+                available.await();
+            }
+            return poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public EncodedSnapshot poll() {
+        lock.lock();
+        try {
+            EncodedSnapshot snapshot = pending;
+            pending = null;
+            if (snapshot != null) {
+                consecutiveCoalesced = 0;
+            }
+            return closed ? null : snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordWrite(long nanos) {
+        writeTimes.record(nanos);
+        WRITE_TIME.record(nanos);
+    }
+
+    public void recordFrame(FrameBytes frame) {
+        lock.lock();
+        try {
+            frames++;
+            frameBytes += frame.size();
+            savedBytes += frame.getSavedBytes();
+        } finally {
+            lock.unlock();
+        }
+        FRAMES_SENT.increment();
+        BYTES_SENT.add(frame.size());
+        BYTES_SAVED.add(frame.getSavedBytes());
+    }
+
+    public Traffic getTraffic() {
+        lock.lock();
+        try {
+            return new Traffic(frames, frameBytes, savedBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCoalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            pending = null;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package server;
+import logging.Log;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.Metrics;
+
+/*
+ * Reloj de paso fijo de una sala: la simulación avanza siempre en pasos de 1/tickRate segundos
+ * medidos con System.nanoTime, aunque un broadcast lento retrase el hilo. Si se acumula demasiado
+ * retraso se ejecutan como mucho MAX_CATCH_UP_TICKS seguidos y el resto se descarta.
+ * Lo avanza el hilo de TickScheduler al que está asignada la sala.
+ */
+final class TickClock {
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    private static final Histogram TICK_TIME = Metrics.timer("spaceinvaders_tick_seconds", "Duration of a simulation tick");
+    private static final Counter TICKS = Metrics.counter("spaceinvaders_ticks_total", "Simulation ticks executed");
+    private static final Counter SKIPPED = Metrics.counter("spaceinvaders_ticks_skipped_total",
+            "Simulation ticks dropped after falling too far behind");
+
+    private final String name;
+    private final long tickNanos;
+    private final long broadcastNanos;
+    private final double dt;
+    private final TickScheduler.Simulation simulation;
+    private final Runnable broadcast;
+    private boolean started;
+    private long previous;
+    private long accumulator;
+    private long nextBroadcast;
+    private long tick;
+    private volatile long skippedTicks;
+
+    TickClock(String name, int tickRate, int broadcastRate, TickScheduler.Simulation simulation, Runnable broadcast) {
+        this.name = name;
+        this.tickNanos = 1_000_000_000L / tickRate;
+        this.broadcastNanos = 1_000_000_000L / broadcastRate;
+        this.dt = 1.0 / tickRate;
+        this.simulation = simulation;
+        this.broadcast = broadcast;
+    }
+
+    // Ejecuta los ticks y el broadcast que tocan; devuelve los nanosegundos hasta el siguiente
+    long advance(long now, LatencyWindow tickDurations) {
+        if (!started) {
+            started = true;
+            previous = now;
+            accumulator = tickNanos; // el primer tick se ejecuta inmediatamente
+            nextBroadcast = now;
+        }
+        accumulator += now - previous;
+        previous = now;
+
+        int steps = 0;
+        while (accumulator >= tickNanos && steps < MAX_CATCH_UP_TICKS) {
+            long start = System.nanoTime();
+            try {
+                simulation.tick(tick, dt);
+            } catch (RuntimeException e) {
+                Log.error("Error en el bucle del juego").with("sala", name).with("error", e).log();
+            }
+            long duration = System.nanoTime() - start;
+            tickDurations.record(duration);
+            TICK_TIME.record(duration);
+            TICKS.increment();
+            tick++;
+            accumulator -= tickNanos;
+            steps++;
+        }
+        if (accumulator >= tickNanos) {
+            skippedTicks += accumulator / tickNanos;
+            SKIPPED.add(accumulator / tickNanos);
+            accumulator %= tickNanos;
+        }
+
+        now = System.nanoTime();
+        if (now - nextBroadcast >= 0) {
+            try {
+                broadcast.run();
+            } catch (RuntimeException e) {
+                Log.error("Error en el broadcast").with("sala", name).with("error", e).log();
+            }
+            nextBroadcast += broadcastNanos;
+            now = System.nanoTime();
+            if (nextBroadcast - now < 0) {
+                // Broadcast atrasado: no intentar recuperar los envíos perdidos
+                nextBroadcast = now + broadcastNanos;
+            }
+        }
+
+        long untilTick = tickNanos - accumulator - (now - previous);
+        return Math.min(untilTick, nextBroadcast - now);
+    }
+
+    long getSkippedTicks() {
+        return skippedTicks;
+    }
+}
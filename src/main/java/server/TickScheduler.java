@@ -0,0 +1,112 @@
+package server;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import logging.Log;
+
+/*
+ * Hilo de simulación compartido por varias salas. Cada sala conserva su propio TickClock de paso
+ * fijo; el hilo avanza todos sus relojes y duerme hasta el tick o broadcast más cercano.
+ * RoomManager reparte las salas entre un número fijo de estos hilos.
+ */
+public class TickScheduler implements Runnable {
+    public interface Simulation {
+        void tick(long tick, double dt);
+    }
+
+    private static final long REPORT_INTERVAL_NANOS = 5_000_000_000L;
+    // Espera máxima sin salas asignadas; add() despierta el hilo antes
+    private static final long IDLE_WAIT_NANOS = 100_000_000L;
+
+    private final String name;
+    private final LatencyWindow tickDurations = new LatencyWindow(1024);
+    // Se sustituye entero en add/remove para que el bucle lo recorra sin bloqueos ni iteradores
+    private volatile TickClock[] clocks = new TickClock[0];
+    private Thread thread;
+    private volatile boolean running = true;
+
+    public TickScheduler(String name) {
+        this.name = name;
+    }
+
+    public void start() {
+        thread = new Thread(this, name);
+        thread.start();
+    }
+
+    synchronized void add(TickClock clock) {
+        TickClock[] updated = Arrays.copyOf(clocks, clocks.length + 1);
+        updated[clocks.length] = clock;
+        clocks = updated;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    synchronized void remove(TickClock clock) {
+        TickClock[] current = clocks;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == clock) {
+                TickClock[] updated = new TickClock[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                clocks = updated;
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return clocks.length;
+    }
+
+    @Override
+    public void run() {
+        long nextReport = System.nanoTime() + REPORT_INTERVAL_NANOS;
+        while (running) {
+            long wait = IDLE_WAIT_NANOS;
+            for (TickClock clock : clocks) {
+                wait = Math.min(wait, clock.advance(System.nanoTime(), tickDurations));
+            }
+
+            long now = System.nanoTime();
+            if (now - nextReport >= 0) {
+                report();
+                nextReport = now + REPORT_INTERVAL_NANOS;
+            }
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    private void report() {
+        TickClock[] current = clocks;
+        if (current.length == 0) {
+            return;
+        }
+        long skipped = 0;
+        for (TickClock clock : current) {
+            skipped += clock.getSkippedTicks();
+        }
+        Log.info("Duración de los ticks").with("hilo", name).with("salas", current.length)
+                .with("p50_us", tickDurations.percentile(0.50) / 1000)
+                .with("p95_us", tickDurations.percentile(0.95) / 1000)
+                .with("p99_us", tickDurations.percentile(0.99) / 1000)
+                .with("max_us", tickDurations.percentile(1.0) / 1000)
+                .with("descartados", skipped)
+                .log();
+    }
+
+    // Percentil de la duración de los últimos ticks de todas sus salas, en nanosegundos
+    public long tickDurationPercentile(double percentile) {
+        return tickDurations.percentile(percentile);
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
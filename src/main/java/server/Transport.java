@@ -0,0 +1,11 @@
+package server;
+
+public enum Transport {
+    NIO,      // Selector con un pool fijo de hilos de E/S
+    BLOCKING, // Un ClientHandler (hilo de plataforma) por conexión
+    VIRTUAL;  // Un ClientHandler por conexión, en hilos virtuales
+
+    public static Transport parse(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}